@@ -0,0 +1,186 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.as3mxml.vscode.debug.requests.ExceptionFilterOptions;
+import com.as3mxml.vscode.debug.requests.ExceptionOptions;
+import com.as3mxml.vscode.debug.requests.ExceptionPathSegment;
+import com.as3mxml.vscode.debug.requests.SetExceptionBreakpointsRequest;
+import com.as3mxml.vscode.debug.responses.ExceptionInfoResponseBody;
+
+/**
+ * Decides which exceptions should stop the runtime, based on the arguments of
+ * the most recent setExceptionBreakpoints request. The decision for each
+ * exception type is cached, so the same exception thrown in a loop is checked
+ * only once. A new instance should be created when the arguments change.
+ */
+public class ExceptionBreakpointSettings {
+    public static final String FILTER_UNCAUGHT = "uncaught";
+    public static final String FILTER_CAUGHT = "caught";
+
+    private boolean stopOnUncaught = false;
+    private boolean stopOnCaught = false;
+    private Set<String> uncaughtTypeNames = null;
+    private Set<String> caughtTypeNames = null;
+    private ExceptionOptions[] exceptionOptions = null;
+    private Map<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates settings that stop on every exception, which is the behavior
+     * before the editor sends its exception breakpoints.
+     */
+    public ExceptionBreakpointSettings() {
+        stopOnUncaught = true;
+        stopOnCaught = true;
+    }
+
+    public ExceptionBreakpointSettings(SetExceptionBreakpointsRequest.SetExceptionBreakpointsArguments arguments) {
+        if (arguments.filters != null) {
+            for (String filter : arguments.filters) {
+                enableFilter(filter, null);
+            }
+        }
+        if (arguments.filterOptions != null) {
+            for (ExceptionFilterOptions filterOptions : arguments.filterOptions) {
+                enableFilter(filterOptions.filterId, filterOptions.condition);
+            }
+        }
+        exceptionOptions = arguments.exceptionOptions;
+    }
+
+    private void enableFilter(String filter, String condition) {
+        if (FILTER_UNCAUGHT.equals(filter)) {
+            stopOnUncaught = true;
+            uncaughtTypeNames = parseTypeNames(condition);
+        } else if (FILTER_CAUGHT.equals(filter)) {
+            stopOnCaught = true;
+            caughtTypeNames = parseTypeNames(condition);
+        }
+    }
+
+    /**
+     * The condition of a filter is a comma-separated list of type names. If
+     * there are no names, every type matches, and null is returned.
+     */
+    private static Set<String> parseTypeNames(String condition) {
+        if (condition == null) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String typeName : condition.split(",")) {
+            typeName = typeName.trim();
+            if (typeName.length() > 0) {
+                result.add(normalizeTypeName(typeName));
+            }
+        }
+        if (result.isEmpty()) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Converts a type name reported by the runtime, like
+     * flash.errors::IOError@1a2b3c, to the form used in ActionScript code,
+     * like flash.errors.IOError.
+     */
+    public static String normalizeTypeName(String typeName) {
+        if (typeName == null) {
+            return "";
+        }
+        int atIndex = typeName.indexOf('@');
+        if (atIndex != -1) {
+            typeName = typeName.substring(0, atIndex);
+        }
+        return typeName.replace("::", ".");
+    }
+
+    private static boolean matchesTypeName(Set<String> typeNames, String typeName) {
+        if (typeNames.contains(typeName)) {
+            return true;
+        }
+        // an unqualified name matches a type in any package
+        int dotIndex = typeName.lastIndexOf('.');
+        return dotIndex != -1 && typeNames.contains(typeName.substring(dotIndex + 1));
+    }
+
+    /**
+     * Only the last segment of a path contains type names. The segments
+     * before it are categories, but the runtime doesn't report a category for
+     * its exceptions, so every exception is considered to be in all of them.
+     */
+    private static boolean matchesPath(ExceptionPathSegment[] path, String typeName) {
+        if (path == null || path.length == 0) {
+            return true;
+        }
+        ExceptionPathSegment segment = path[path.length - 1];
+        boolean matches = false;
+        if (segment.names != null) {
+            Set<String> names = new HashSet<>();
+            for (String name : segment.names) {
+                names.add(normalizeTypeName(name));
+            }
+            matches = matchesTypeName(names, typeName);
+        }
+        return matches != segment.negate;
+    }
+
+    /**
+     * Indicates if an exception with the specified type should stop the
+     * runtime. The type name should already be normalized.
+     */
+    public boolean shouldStop(String typeName, boolean caught) {
+        String key = (caught ? "caught:" : "uncaught:") + typeName;
+        Boolean decision = decisions.get(key);
+        if (decision == null) {
+            decision = decide(typeName, caught);
+            decisions.put(key, decision);
+        }
+        return decision;
+    }
+
+    private boolean decide(String typeName, boolean caught) {
+        if (exceptionOptions != null) {
+            for (ExceptionOptions options : exceptionOptions) {
+                if (!matchesPath(options.path, typeName)) {
+                    continue;
+                }
+                // the first options that match the type are used
+                if (ExceptionInfoResponseBody.EXCEPTION_BREAK_MODE_NEVER.equals(options.breakMode)) {
+                    return false;
+                }
+                if (ExceptionInfoResponseBody.EXCEPTION_BREAK_MODE_ALWAYS.equals(options.breakMode)) {
+                    return true;
+                }
+                return !caught;
+            }
+        }
+        boolean stopForCaughtFilter = stopOnCaught
+                && (caughtTypeNames == null || matchesTypeName(caughtTypeNames, typeName));
+        if (caught) {
+            return stopForCaughtFilter;
+        }
+        // the caught filter pauses on every exception that is thrown, so an
+        // uncaught exception may stop for either filter
+        return stopForCaughtFilter
+                || (stopOnUncaught && (uncaughtTypeNames == null || matchesTypeName(uncaughtTypeNames, typeName)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import flash.tools.debugger.Session;
+import flash.tools.debugger.SourceFile;
+
+/**
+ * Maps the names of the functions in a SWF to their source files and lines.
+ * Names may be found with an exact match, or with a suffix that starts after
+ * a separator, like MyClass/myMethod or myMethod.
+ */
+public class FunctionNameIndex {
+    public static class FunctionLocation {
+        public FunctionLocation(SourceFile sourceFile, String functionName, int line) {
+            this.sourceFile = sourceFile;
+            this.functionName = functionName;
+            this.line = line;
+        }
+
+        public SourceFile sourceFile;
+        public String functionName;
+        public int line;
+    }
+
+    private Map<String, List<FunctionLocation>> locationsByName = new HashMap<>();
+    private Map<String, List<FunctionLocation>> locationsByShortName = new HashMap<>();
+
+    public FunctionNameIndex(Session session, SourceFile[] sourceFiles) {
+        for (SourceFile sourceFile : sourceFiles) {
+            String[] functionNames = sourceFile.getFunctionNames(session);
+            if (functionNames == null) {
+                continue;
+            }
+            for (String functionName : functionNames) {
+                int line = sourceFile.getLineForFunctionName(session, functionName);
+                if (line <= 0) {
+                    continue;
+                }
+                FunctionLocation location = new FunctionLocation(sourceFile, functionName, line);
+                addLocation(locationsByName, functionName, location);
+                addLocation(locationsByShortName, getShortName(functionName), location);
+            }
+        }
+    }
+
+    private static void addLocation(Map<String, List<FunctionLocation>> map, String key, FunctionLocation location) {
+        List<FunctionLocation> locations = map.get(key);
+        if (locations == null) {
+            locations = new ArrayList<>(1);
+            map.put(key, locations);
+        }
+        locations.add(location);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == ':' || c == '.';
+    }
+
+    private static String getShortName(String functionName) {
+        for (int i = functionName.length() - 1; i >= 0; i--) {
+            if (isSeparator(functionName.charAt(i))) {
+                return functionName.substring(i + 1);
+            }
+        }
+        return functionName;
+    }
+
+    /**
+     * Returns the locations of the functions with the specified name. If
+     * there are no exact matches, returns the functions with names that end
+     * with the specified name.
+     */
+    public List<FunctionLocation> find(String name) {
+        if (name.length() == 0) {
+            return Collections.emptyList();
+        }
+        List<FunctionLocation> exactMatches = locationsByName.get(name);
+        if (exactMatches != null) {
+            return exactMatches;
+        }
+        // only the functions with the same short name can end with the name,
+        // so there's no need to check the rest of them
+        List<FunctionLocation> candidates = locationsByShortName.get(getShortName(name));
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        List<FunctionLocation> result = new ArrayList<>();
+        for (FunctionLocation candidate : candidates) {
+            String functionName = candidate.functionName;
+            int start = functionName.length() - name.length();
+            if (start > 0 && functionName.endsWith(name) && (isSeparator(functionName.charAt(start - 1))
+                    || isSeparator(name.charAt(0)))) {
+                result.add(candidate);
+            }
+        }
+        int dotIndex = name.lastIndexOf('.');
+        if (result.isEmpty() && dotIndex != -1 && name.indexOf('/') == -1) {
+            // MyClass.myMethod is a common way to write MyClass/myMethod
+            return find(name.substring(0, dotIndex) + "/" + name.substring(dotIndex + 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the handles used for frame ids and variablesReference values to the
+ * isolate, frame, and value that they refer to. Records are stored in
+ * parallel arrays, and a handle is the position of its record plus an
+ * offset, so lookups don't require any division or boxing.
+ *
+ * Handles are valid only while their isolate remains suspended. When an
+ * isolate resumes, its handles are invalidated by incrementing its
+ * generation. When no isolates are suspended, all records are discarded at
+ * once, and the offset moves past the handles that were discarded, so that
+ * a handle still held by the editor can't match a newer record.
+ *
+ * While an isolate remains suspended, the same frame or value always gets
+ * the same handle, so an editor that keeps refreshing its views doesn't
+ * add more records. A handle is never reassigned to a different record
+ * during a session. Frame ids are ints in the protocol, so every handle fits
+ * in an int, and no more handles may be created after the last one.
+ */
+public class HandleRegistry {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] isolateIds = new int[INITIAL_CAPACITY];
+    private int[] frameIndexes = new int[INITIAL_CAPACITY];
+    private long[] valueIds = new long[INITIAL_CAPACITY];
+    private int[] recordGenerations = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private int offset = 0;
+    // isolate ids are small integers, so they may be used as positions
+    private int[] isolateGenerations = new int[8];
+    private Map<RecordKey, Integer> handlesByRecord = new HashMap<>();
+
+    /**
+     * Returns a handle for a frame or value, which is new unless a valid
+     * handle already refers to the same one. Handles are always greater than
+     * 0 because a variablesReference of 0 means that a variable has no
+     * children. Throws IllegalStateException if every handle has been used.
+     */
+    public synchronized int create(int isolateId, int frameIndex, long valueId) {
+        RecordKey key = new RecordKey(isolateId, frameIndex, valueId);
+        Integer existingHandle = handlesByRecord.get(key);
+        if (existingHandle != null && isValid(existingHandle)) {
+            return existingHandle;
+        }
+        if (offset + size == Integer.MAX_VALUE) {
+            // wrapping around would allow an old handle to match a new record
+            throw new IllegalStateException("No more handles are available in this debug session");
+        }
+        if (size == isolateIds.length) {
+            int capacity = size * 2;
+            isolateIds = Arrays.copyOf(isolateIds, capacity);
+            frameIndexes = Arrays.copyOf(frameIndexes, capacity);
+            valueIds = Arrays.copyOf(valueIds, capacity);
+            recordGenerations = Arrays.copyOf(recordGenerations, capacity);
+        }
+        isolateIds[size] = isolateId;
+        frameIndexes[size] = frameIndex;
+        valueIds[size] = valueId;
+        recordGenerations[size] = getGeneration(isolateId);
+        size++;
+        int handle = offset + size;
+        // replaces any handle that was invalidated when the isolate resumed
+        handlesByRecord.put(key, handle);
+        return handle;
+    }
+
+    /**
+     * Indicates if a handle was created since its isolate last resumed.
+     */
+    public synchronized boolean isValid(long handle) {
+        if (handle <= offset || handle > offset + size) {
+            return false;
+        }
+        int position = (int) (handle - offset - 1);
+        return recordGenerations[position] == getGeneration(isolateIds[position]);
+    }
+
+    /**
+     * The following methods should be called only for valid handles.
+     */
+    public synchronized int getIsolateId(long handle) {
+        return isolateIds[(int) (handle - offset - 1)];
+    }
+
+    public synchronized int getFrameIndex(long handle) {
+        return frameIndexes[(int) (handle - offset - 1)];
+    }
+
+    public synchronized long getValueId(long handle) {
+        return valueIds[(int) (handle - offset - 1)];
+    }
+
+    /**
+     * Invalidates every handle created for an isolate. The records remain
+     * until clear() is called.
+     */
+    public synchronized void invalidate(int isolateId) {
+        if (isolateId < 0) {
+            return;
+        }
+        if (isolateId >= isolateGenerations.length) {
+            isolateGenerations = Arrays.copyOf(isolateGenerations, Math.max(isolateId + 1,
+                    isolateGenerations.length * 2));
+        }
+        isolateGenerations[isolateId]++;
+    }
+
+    /**
+     * Discards all records.
+     */
+    public synchronized void clear() {
+        offset += size;
+        size = 0;
+        handlesByRecord.clear();
+        if (isolateIds.length > INITIAL_CAPACITY * 16) {
+            // don't hold on to the memory used by a very large stop
+            isolateIds = new int[INITIAL_CAPACITY];
+            frameIndexes = new int[INITIAL_CAPACITY];
+            valueIds = new long[INITIAL_CAPACITY];
+            recordGenerations = new int[INITIAL_CAPACITY];
+        }
+    }
+
+    private int getGeneration(int isolateId) {
+        if (isolateId < 0 || isolateId >= isolateGenerations.length) {
+            return 0;
+        }
+        return isolateGenerations[isolateId];
+    }
+
+    private static class RecordKey {
+        public RecordKey(int isolateId, int frameIndex, long valueId) {
+            this.isolateId = isolateId;
+            this.frameIndex = frameIndex;
+            this.valueId = valueId;
+        }
+
+        private int isolateId;
+        private int frameIndex;
+        private long valueId;
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey otherKey = (RecordKey) other;
+            return isolateId == otherKey.isolateId && frameIndex == otherKey.frameIndex
+                    && valueId == otherKey.valueId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * isolateId + frameIndex) * 31 + Long.hashCode(valueId);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import flash.tools.debugger.Variable;
+import flash.tools.debugger.VariableAttribute;
+
+/**
+ * The members of an Array or Vector with numeric names, sorted by index, so
+ * that a page of members may be found without checking every member again.
+ * Arrays may be sparse, so the indexes are stored with the members instead
+ * of being used as positions.
+ */
+public class IndexedMembers {
+    private int[] indexes;
+    private Variable[] members;
+
+    public IndexedMembers(Variable[] allMembers) {
+        // pack each index with its position so that a primitive sort may be
+        // used. the runtime usually returns the members in order already.
+        long[] sorted = new long[allMembers.length];
+        int count = 0;
+        for (int i = 0; i < allMembers.length; i++) {
+            Variable member = allMembers[i];
+            if (member.isAttributeSet(VariableAttribute.IS_STATIC)) {
+                continue;
+            }
+            int index = parseIndex(member.getName());
+            if (index == -1) {
+                continue;
+            }
+            sorted[count] = ((long) index << 32) | i;
+            count++;
+        }
+        Arrays.sort(sorted, 0, count);
+        indexes = new int[count];
+        members = new Variable[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = (int) (sorted[i] >>> 32);
+            members[i] = allMembers[(int) sorted[i]];
+        }
+    }
+
+    /**
+     * Returns the index of an array element with the specified member name,
+     * or -1 if the name is not an index. Like ActionScript, a name with a
+     * leading zero, like 01, is not considered an index.
+     */
+    public static int parseIndex(String name) {
+        int length = name.length();
+        if (length == 0 || length > 10 || (length > 1 && name.charAt(0) == '0')) {
+            return -1;
+        }
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = (result * 10) + (c - '0');
+        }
+        if (result > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) result;
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    /**
+     * Returns the members with indexes from start, inclusive, to
+     * start + count, exclusive, in order. If count is 0, returns every
+     * member from start to the end.
+     */
+    public List<Variable> getPage(int start, int count) {
+        int position = Arrays.binarySearch(indexes, start);
+        if (position < 0) {
+            position = -(position + 1);
+        }
+        long end = count > 0 ? (long) start + count : Long.MAX_VALUE;
+        List<Variable> result = new ArrayList<>(Math.min(count > 0 ? count : members.length, members.length));
+        for (int i = position; i < members.length && indexes[i] < end; i++) {
+            result.add(members[i]);
+        }
+        return result;
+    }
+}
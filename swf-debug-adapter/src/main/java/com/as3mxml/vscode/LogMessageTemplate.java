@@ -0,0 +1,179 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import flash.tools.debugger.Value;
+import flash.tools.debugger.Variable;
+import flash.tools.debugger.expression.ASTBuilder;
+import flash.tools.debugger.expression.Context;
+import flash.tools.debugger.expression.ValueExp;
+
+/**
+ * The message of a logpoint, split into literal text and the expressions
+ * between { and } that are evaluated each time that the logpoint is hit. The
+ * expressions are parsed once, when the template is created. A { or } that
+ * is preceded by a backslash is treated as literal text, and so is a } that
+ * doesn't close an expression, like in the logpoints of VS Code.
+ */
+public class LogMessageTemplate {
+    private static class Segment {
+        public Segment(String text, ValueExp expression) {
+            this.text = text;
+            this.expression = expression;
+        }
+
+        public String text;
+        public ValueExp expression;
+    }
+
+    private List<Segment> segments = new ArrayList<>();
+    private boolean hasExpressions = false;
+
+    private LogMessageTemplate() {
+    }
+
+    /**
+     * Parses a log message. Throws ParseException if a { isn't closed or an
+     * expression can't be parsed.
+     */
+    public static LogMessageTemplate parse(String message) throws ParseException {
+        LogMessageTemplate template = new LogMessageTemplate();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        int length = message.length();
+        while (i < length) {
+            char c = message.charAt(i);
+            if (c == '\\' && i + 1 < length && (message.charAt(i + 1) == '{' || message.charAt(i + 1) == '}')) {
+                literal.append(message.charAt(i + 1));
+                i += 2;
+                continue;
+            }
+            if (c != '{') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            int start = i + 1;
+            int depth = 1;
+            i = start;
+            while (i < length && depth > 0) {
+                char current = message.charAt(i);
+                if (current == '{') {
+                    depth++;
+                } else if (current == '}') {
+                    depth--;
+                }
+                i++;
+            }
+            if (depth > 0) {
+                throw new ParseException("Missing } in log message", start - 1);
+            }
+            String expressionText = message.substring(start, i - 1);
+            if (expressionText.trim().length() == 0) {
+                throw new ParseException("Empty expression in log message", start - 1);
+            }
+            if (literal.length() > 0) {
+                template.segments.add(new Segment(literal.toString(), null));
+                literal.setLength(0);
+            }
+            template.segments.add(new Segment(expressionText, parseExpression(expressionText)));
+            template.hasExpressions = true;
+        }
+        if (literal.length() > 0) {
+            template.segments.add(new Segment(literal.toString(), null));
+        }
+        return template;
+    }
+
+    private static ValueExp parseExpression(String expressionText) throws ParseException {
+        ValueExp expression = null;
+        try {
+            ASTBuilder builder = new ASTBuilder(false);
+            expression = builder.parse(new StringReader(expressionText));
+        } catch (ParseException e) {
+            throw new ParseException("Invalid expression {" + expressionText + "}: " + e.getMessage(),
+                    e.getErrorOffset());
+        } catch (Exception e) {
+            // actually, just catch all parsing exceptions
+        }
+        if (expression == null) {
+            throw new ParseException("Invalid expression {" + expressionText + "}", 0);
+        }
+        return expression;
+    }
+
+    /**
+     * Indicates if the template has any expressions that need a frame to be
+     * evaluated.
+     */
+    public boolean hasExpressions() {
+        return hasExpressions;
+    }
+
+    /**
+     * Evaluates the expressions in the template with the same context, and
+     * returns the complete message.
+     */
+    public String evaluate(Context context) {
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : segments) {
+            if (segment.expression == null) {
+                result.append(segment.text);
+                continue;
+            }
+            if (context == null) {
+                result.append("undefined");
+                continue;
+            }
+            try {
+                result.append(valueToString(segment.expression.evaluate(context)));
+            } catch (Exception e) {
+                String message = e.getMessage();
+                if (message == null) {
+                    message = e.getClass().getSimpleName();
+                }
+                result.append("<error: ");
+                result.append(message);
+                result.append(">");
+            }
+        }
+        return result.toString();
+    }
+
+    private String valueToString(Object evaluateResult) {
+        Value value = null;
+        if (evaluateResult instanceof Variable) {
+            value = ((Variable) evaluateResult).getValue();
+        } else if (evaluateResult instanceof Value) {
+            value = (Value) evaluateResult;
+        } else if (evaluateResult != null) {
+            return evaluateResult.toString();
+        }
+        if (value == null) {
+            return "undefined";
+        }
+        if (value.getId() != Value.UNKNOWN_ID) {
+            // an object, so use the same result as the evaluate request
+            return value.getTypeName();
+        }
+        return value.getValueAsString();
+    }
+}
@@ -24,4 +24,8 @@ public class SWFAttachRequestArguments extends AttachRequest.AttachRequestArgume
 	public String applicationID = null;
 	public String bundle = null;
 	public String platformsdk = null;
+	public Integer traceOutputBatchSize = null;
+	public Integer traceOutputBatchDelay = null;
+	public Integer traceOutputRateLimit = null;
+	public Integer traceOutputTailLines = null;
 }
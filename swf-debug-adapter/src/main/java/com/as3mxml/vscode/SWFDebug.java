@@ -16,9 +16,22 @@ limitations under the License.
 package com.as3mxml.vscode;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+
+import com.as3mxml.vscode.debug.utils.ThreadUtils;
 
 public class SWFDebug {
     private static final int SERVER_CONNECT_ERROR = 100;
@@ -28,6 +41,8 @@ public class SWFDebug {
         int port = -1;
         boolean traceRequests = false;
         boolean traceResponses = false;
+        boolean multiSession = false;
+        boolean virtualThreads = false;
         for (String arg : args) {
             if (arg.equals("--server")) {
                 port = DEFAULT_PORT;
@@ -37,13 +52,29 @@ public class SWFDebug {
                 } catch (NumberFormatException e) {
                     port = -1;
                 }
+            } else if (arg.equals("--multi-session")) {
+                multiSession = true;
+            } else if (arg.equals("--virtual-threads")) {
+                virtualThreads = true;
             } else if (arg.equals("--trace")) {
                 port = DEFAULT_PORT;
             } else if (arg.equals("--trace-response")) {
                 port = DEFAULT_PORT;
             }
         }
+        ThreadFactory threadFactory = ThreadUtils.PLATFORM_THREAD_FACTORY;
+        if (virtualThreads) {
+            threadFactory = ThreadUtils.createVirtualThreadFactory();
+            if (!ThreadUtils.isVirtualThreadFactory(threadFactory)) {
+                System.err.println("Virtual threads are not supported by this JDK. Using platform threads instead.");
+            }
+        }
+        if (multiSession && port != -1) {
+            runMultiSessionServer(port, threadFactory, traceRequests, traceResponses);
+            return;
+        }
         SWFDebugSession debugSession = new SWFDebugSession();
+        debugSession.setThreadFactory(threadFactory);
         debugSession.TRACE = traceRequests;
         debugSession.TRACE_RESPONSE = traceResponses;
         if (port == -1) {
@@ -76,4 +107,150 @@ public class SWFDebug {
             }
         }
     }
-}
+
+    /**
+     * Keeps accepting connections until the process is stopped, and runs an
+     * independent debug session for each one. If the server can no longer
+     * accept connections, the sessions that are already running may finish.
+     */
+    private static void runMultiSessionServer(int port, ThreadFactory threadFactory, boolean traceRequests,
+            boolean traceResponses) {
+        ServerSocketChannel serverChannel = null;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            System.err.println("SWF debug adapter failed to listen on port " + port + ".");
+            System.err.println(
+                    "Visit the following URL to file an issue, and please include this log: https://github.com/BowlerHatLLC/vscode-swf-debug/issues");
+            e.printStackTrace(System.err);
+            System.exit(SERVER_CONNECT_ERROR);
+        }
+        Executor executor = null;
+        if (ThreadUtils.isVirtualThreadFactory(threadFactory)) {
+            executor = ThreadUtils.createThreadPerTaskExecutor(threadFactory);
+        } else {
+            executor = Executors.newCachedThreadPool(threadFactory);
+        }
+        // each session registers itself, so that the server can wait for the
+        // running sessions to end
+        Phaser activeSessions = new Phaser(1);
+        try {
+            while (true) {
+                SocketChannel clientChannel = serverChannel.accept();
+                activeSessions.register();
+                executor.execute(new SessionConnection(clientChannel, threadFactory, traceRequests, traceResponses,
+                        activeSessions));
+            }
+        } catch (IOException e) {
+            System.err.println("SWF debug adapter stopped accepting connections.");
+            System.err.println("Existing debug sessions will continue until they end.");
+            e.printStackTrace(System.err);
+        } finally {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                // safe to ignore
+            }
+            if (executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdown();
+            }
+        }
+        // virtual threads don't keep the process alive, so wait for them
+        activeSessions.arriveAndAwaitAdvance();
+    }
+
+    private static class SessionConnection implements Runnable {
+        private SocketChannel clientChannel;
+        private ThreadFactory threadFactory;
+        private boolean traceRequests;
+        private boolean traceResponses;
+        private Phaser activeSessions;
+
+        public SessionConnection(SocketChannel clientChannel, ThreadFactory threadFactory, boolean traceRequests,
+                boolean traceResponses, Phaser activeSessions) {
+            this.clientChannel = clientChannel;
+            this.threadFactory = threadFactory;
+            this.traceRequests = traceRequests;
+            this.traceResponses = traceResponses;
+            this.activeSessions = activeSessions;
+        }
+
+        public void run() {
+            SWFDebugSession debugSession = new SWFDebugSession();
+            debugSession.setThreadFactory(threadFactory);
+            debugSession.TRACE = traceRequests;
+            debugSession.TRACE_RESPONSE = traceResponses;
+            try {
+                debugSession.start(new ChannelInputStream(clientChannel), new ChannelOutputStream(clientChannel));
+            } finally {
+                // if the editor went away without disconnecting, don't leave
+                // the runtime running
+                debugSession.dispose();
+                try {
+                    clientChannel.close();
+                } catch (IOException e) {
+                    // safe to ignore
+                }
+                activeSessions.arriveAndDeregister();
+            }
+        }
+    }
+
+    /**
+     * Reads directly from the channel. Unlike Channels.newInputStream(), it
+     * doesn't hold the channel's blocking lock while it waits, so another
+     * thread may write to the same channel at the same time.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private SocketChannel channel;
+
+        public ChannelInputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int result = read(b, 0, 1);
+            if (result <= 0) {
+                return -1;
+            }
+            return b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+    /**
+     * Writes directly to the channel. Unlike Channels.newOutputStream(), it
+     * doesn't hold the channel's blocking lock, so another thread may read
+     * from the same channel at the same time.
+     */
+    private static class ChannelOutputStream extends OutputStream {
+        private SocketChannel channel;
+
+        public ChannelOutputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
\ No newline at end of file
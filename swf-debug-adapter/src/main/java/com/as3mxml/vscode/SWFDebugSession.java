@@ -24,7 +24,6 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.lang.reflect.Type;
 import java.net.ConnectException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -33,11 +32,18 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,6 +52,7 @@ import org.apache.commons.io.IOUtils;
 
 import com.as3mxml.vscode.debug.DebugSession;
 import com.as3mxml.vscode.debug.events.BreakpointEvent;
+import com.as3mxml.vscode.debug.events.ExitedEvent;
 import com.as3mxml.vscode.debug.events.InitializedEvent;
 import com.as3mxml.vscode.debug.events.OutputEvent;
 import com.as3mxml.vscode.debug.events.StoppedEvent;
@@ -54,16 +61,20 @@ import com.as3mxml.vscode.debug.events.ThreadEvent;
 import com.as3mxml.vscode.debug.protocol.Request;
 import com.as3mxml.vscode.debug.protocol.Response;
 import com.as3mxml.vscode.debug.requests.AttachRequest;
+import com.as3mxml.vscode.debug.requests.BreakpointLocationsRequest;
 import com.as3mxml.vscode.debug.requests.ConfigurationDoneRequest;
 import com.as3mxml.vscode.debug.requests.ContinueRequest;
 import com.as3mxml.vscode.debug.requests.EvaluateRequest;
 import com.as3mxml.vscode.debug.requests.ExceptionInfoRequest;
+import com.as3mxml.vscode.debug.requests.FunctionBreakpoint;
 import com.as3mxml.vscode.debug.requests.InitializeRequest;
 import com.as3mxml.vscode.debug.requests.LaunchRequest;
 import com.as3mxml.vscode.debug.requests.NextRequest;
 import com.as3mxml.vscode.debug.requests.PauseRequest;
 import com.as3mxml.vscode.debug.requests.ScopesRequest;
 import com.as3mxml.vscode.debug.requests.SetBreakpointsRequest;
+import com.as3mxml.vscode.debug.requests.SetExceptionBreakpointsRequest;
+import com.as3mxml.vscode.debug.requests.SetFunctionBreakpointsRequest;
 import com.as3mxml.vscode.debug.requests.SetVariableRequest;
 import com.as3mxml.vscode.debug.requests.Source;
 import com.as3mxml.vscode.debug.requests.SourceBreakpoint;
@@ -72,13 +83,17 @@ import com.as3mxml.vscode.debug.requests.StepInRequest;
 import com.as3mxml.vscode.debug.requests.StepOutRequest;
 import com.as3mxml.vscode.debug.requests.VariablesRequest;
 import com.as3mxml.vscode.debug.responses.Breakpoint;
+import com.as3mxml.vscode.debug.responses.BreakpointLocation;
+import com.as3mxml.vscode.debug.responses.BreakpointLocationsResponseBody;
 import com.as3mxml.vscode.debug.responses.Capabilities;
 import com.as3mxml.vscode.debug.responses.EvaluateResponseBody;
+import com.as3mxml.vscode.debug.responses.ExceptionBreakpointsFilter;
 import com.as3mxml.vscode.debug.responses.ExceptionDetails;
 import com.as3mxml.vscode.debug.responses.ExceptionInfoResponseBody;
 import com.as3mxml.vscode.debug.responses.Scope;
 import com.as3mxml.vscode.debug.responses.ScopesResponseBody;
 import com.as3mxml.vscode.debug.responses.SetBreakpointsResponseBody;
+import com.as3mxml.vscode.debug.responses.SetFunctionBreakpointsResponseBody;
 import com.as3mxml.vscode.debug.responses.SetVariableResponseBody;
 import com.as3mxml.vscode.debug.responses.StackFrame;
 import com.as3mxml.vscode.debug.responses.StackTraceResponseBody;
@@ -89,19 +104,13 @@ import com.as3mxml.vscode.debug.responses.VariablePresentationHint;
 import com.as3mxml.vscode.debug.responses.VariablesResponseBody;
 import com.as3mxml.vscode.debug.utils.DeviceInstallUtils;
 import com.as3mxml.vscode.debug.utils.DeviceInstallUtils.DeviceCommandResult;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonParseException;
+import com.as3mxml.vscode.debug.utils.ThreadUtils;
 
 import flash.tools.debugger.AIRLaunchInfo;
 import flash.tools.debugger.CommandLineException;
 import flash.tools.debugger.DefaultDebuggerCallbacks;
 import flash.tools.debugger.Frame;
 import flash.tools.debugger.ILaunchNotification;
-import flash.tools.debugger.InProgressException;
 import flash.tools.debugger.Isolate;
 import flash.tools.debugger.IsolateSession;
 import flash.tools.debugger.Location;
@@ -154,6 +163,19 @@ public class SWFDebugSession extends DebugSession {
     private static final String PLATFORM_IOS = "ios";
     private static final String PLATFORM_IOS_SIMULATOR = "ios_simulator";
     private static final long LOCALS_VALUE_ID = 1;
+    private static final Object SESSION_MANAGER_LOCK = new Object();
+    private static final long MIN_RUNNER_WAIT_MS = 1;
+    private static final long MAX_RUNNER_WAIT_MS = 50;
+    private static final long EVENT_POLL_INTERVAL_MS = 1;
+    private static final int DEFAULT_TRACE_OUTPUT_BATCH_SIZE = 16384;
+    private static final int DEFAULT_TRACE_OUTPUT_BATCH_DELAY_MS = 10;
+    private static final int DEFAULT_TRACE_OUTPUT_RATE_LIMIT = 0;
+    private static final int DEFAULT_TRACE_OUTPUT_TAIL_LINES = 10;
+    private static final long TRACE_SUPPRESSED_SUMMARY_INTERVAL_MS = 1000;
+    private static final Pattern HIT_CONDITION_PATTERN = Pattern.compile("^\\s*(==|>=|%)?\\s*(\\d+)\\s*$");
+    private static final String HIT_CONDITION_EQUAL = "==";
+    private static final String HIT_CONDITION_GREATER_OR_EQUAL = ">=";
+    private static final String HIT_CONDITION_MODULO = "%";
     // (?!\s*-->) ignores lines that are commented out
     private static final Pattern AIR_DESCRIPTOR_ARCHITECTURE_ELEMENT_PATTERN = Pattern
             .compile("<architecture>(.*?)<\\/architecture>(?!\\s*-->)");
@@ -161,9 +183,16 @@ public class SWFDebugSession extends DebugSession {
     private List<IsolateWithState> isolates = new CopyOnWriteArrayList<>();
     private Process swfRunProcess;
     private java.lang.Thread sessionThread;
-    private boolean cancelRunner = false;
+    private volatile boolean cancelRunner = false;
+    private final Object runnerMonitor = new Object();
+    // requests and the session runner both install and remove breakpoints
+    private final Object breakpointLock = new Object();
+    private long runnerSignalCount = 0;
     private boolean waitingForResume = false;
     private FaultEvent previousFaultEvent = null;
+    private boolean resumeAfterFault = false;
+    private boolean resumeAfterBreak = false;
+    private volatile ExceptionBreakpointSettings exceptionBreakpointSettings = new ExceptionBreakpointSettings();
     private Path flexlib;
     private Path flexHome;
     private Path adlPath;
@@ -172,11 +201,22 @@ public class SWFDebugSession extends DebugSession {
     private Path adbPath;
     private Path idbPath;
     private Map<String, PendingBreakpoints> pendingBreakpoints;
-    private Map<String, BreakpointExtras> savedBreakpointExtras;
+    private Map<String, Map<Integer, InstalledBreakpoint>> installedBreakpoints;
+    private Map<BreakpointHitKey, List<InstalledBreakpoint>> breakpointHits = new ConcurrentHashMap<>();
+    private volatile Map<String, InstalledBreakpoint> functionBreakpoints = Collections.emptyMap();
+    private Map<Integer, SourceFileIndex> sourceFileIndexes = new ConcurrentHashMap<>();
+    private Set<Path> newlyIndexedPaths = ConcurrentHashMap.newKeySet();
+    private SuspensionCache suspensionCache = new SuspensionCache();
+    private HandleRegistry handles = new HandleRegistry();
     private int nextBreakpointID = 1;
     private String forwardedPortPlatform = null;
     private int forwardedPort = -1;
     private boolean configDone = false;
+    private boolean clientSupportsVariablePaging = false;
+    private int traceOutputBatchSize = DEFAULT_TRACE_OUTPUT_BATCH_SIZE;
+    private int traceOutputBatchDelay = DEFAULT_TRACE_OUTPUT_BATCH_DELAY_MS;
+    private int traceOutputRateLimit = DEFAULT_TRACE_OUTPUT_RATE_LIMIT;
+    private int traceOutputTailLines = DEFAULT_TRACE_OUTPUT_TAIL_LINES;
 
     private class IsolateWithState {
         public IsolateWithState(Isolate isolate) {
@@ -186,72 +226,189 @@ public class SWFDebugSession extends DebugSession {
         public Isolate isolate;
         public boolean waitingForResume = false;
         public FaultEvent previousFaultEvent = null;
+        public boolean resumeAfterFault = false;
+        public boolean resumeAfterBreak = false;
     }
 
     private class PendingBreakpoints {
-        public PendingBreakpoints(SourceBreakpoint[] breakpoints) {
+        public PendingBreakpoints(Path key, SourceBreakpoint[] breakpoints) {
+            this.key = key;
             this.breakpoints = breakpoints;
-            idStart = nextBreakpointID;
         }
 
+        Path key;
         SourceBreakpoint[] breakpoints;
-        int idStart;
     }
 
-    private class BreakpointExtras {
-        public BreakpointExtras(Location location, String logMessage, String condition) {
-            this.location = location;
-            this.logMessage = logMessage;
-            this.condition = condition;
+    /**
+     * A breakpoint requested by the editor for a specific line. The ID stays
+     * the same for as long as the line has a breakpoint. If the location is
+     * null, the breakpoint has not been set in the runtime. Must be modified
+     * only while holding breakpointLock.
+     */
+    private class InstalledBreakpoint {
+        public InstalledBreakpoint(int id, int line) {
+            this.id = id;
+            this.line = line;
         }
 
+        public int id;
+        public int line;
         public Location location;
         public String logMessage;
         public String condition;
+        public ValueExp compiledCondition;
+        public String conditionError;
+        public String hitCondition;
+        public String hitOperator;
+        public int hitTarget;
+        public int hitCount;
+        public String hitConditionError;
+        public LogMessageTemplate logMessageTemplate;
+        public String logMessageError;
+
+        public boolean hasExtras() {
+            return logMessage != null || condition != null || hitCondition != null;
+        }
+
+        public String getErrorMessage() {
+            if (conditionError != null) {
+                return conditionError;
+            }
+            if (hitConditionError != null) {
+                return hitConditionError;
+            }
+            return logMessageError;
+        }
+
+        /**
+         * Counts a hit, and returns true if the hit condition is satisfied.
+         */
+        public boolean checkHitCondition() {
+            if (hitOperator == null) {
+                return true;
+            }
+            hitCount++;
+            switch (hitOperator) {
+                case HIT_CONDITION_GREATER_OR_EQUAL:
+                    return hitCount >= hitTarget;
+                case HIT_CONDITION_MODULO:
+                    return hitCount % hitTarget == 0;
+                default:
+                    return hitCount == hitTarget;
+            }
+        }
+    }
+
+    /**
+     * Identifies the location of a BreakEvent, so that the breakpoints that
+     * were hit may be found without a search. A location that is shared by
+     * more than one breakpoint is cleared only when the last one is removed.
+     */
+    private static class BreakpointHitKey {
+        public BreakpointHitKey(int isolateId, int fileId, int line) {
+            this.isolateId = isolateId;
+            this.fileId = fileId;
+            this.line = line;
+        }
+
+        public BreakpointHitKey(Location location) {
+            this(location.getIsolateId(), location.getFile().getId(), location.getLine());
+        }
+
+        private int isolateId;
+        private int fileId;
+        private int line;
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof BreakpointHitKey)) {
+                return false;
+            }
+            BreakpointHitKey otherKey = (BreakpointHitKey) other;
+            return isolateId == otherKey.isolateId && fileId == otherKey.fileId && line == otherKey.line;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * isolateId + fileId) * 31 + line;
+        }
     }
 
-    private class RunProcessRunner implements Runnable {
-        public RunProcessRunner() {
+    /**
+     * Polls until the runtime queues a debugger event, and then wakes up the
+     * session runner. ThreadSafeSession holds the session manager's lock for
+     * the duration of every call, so waitForEvent() can't be used. It would
+     * keep requests from using the session until the next event, and none
+     * arrive while the SWF is stopped. Suspending after a step doesn't
+     * necessarily queue an event, so the session runner also polls with an
+     * adaptive backoff.
+     */
+    private class EventWaiter implements Runnable {
+        private ThreadSafeSession waiterSession;
+
+        public EventWaiter(ThreadSafeSession waiterSession) {
+            this.waiterSession = waiterSession;
         }
 
         public void run() {
-            while (true) {
-                if (cancelRunner) {
-                    break;
-                }
-                try {
-                    swfRunProcess.exitValue();
-                    cancelRunner = true;
-                    sendEvent(new TerminatedEvent());
-                } catch (IllegalThreadStateException e) {
-                    // safe to ignore
-                }
-                try {
-                    java.lang.Thread.sleep(50);
-                } catch (InterruptedException ie) {
+            try {
+                while (!cancelRunner) {
+                    if (waiterSession.getEventCount() == 0) {
+                        if (!waiterSession.isConnected()) {
+                            break;
+                        }
+                        // don't hold the lock while waiting
+                        java.lang.Thread.sleep(EVENT_POLL_INTERVAL_MS);
+                        continue;
+                    }
+                    synchronized (runnerMonitor) {
+                        runnerSignalCount++;
+                        runnerMonitor.notifyAll();
+                        // wait for the session runner to take the events, or
+                        // this loop would spin
+                        while (!cancelRunner && waiterSession.getEventCount() > 0) {
+                            runnerMonitor.wait(MAX_RUNNER_WAIT_MS);
+                        }
+                    }
                 }
+            } catch (InterruptedException e) {
+                // stop waiting
             }
         }
     }
 
     private class SessionRunner implements Runnable {
         private boolean initialized = false;
+        private long lastSignalCount = 0;
+        private long lastWakeTime = 0;
+        private StringBuilder pendingTraceOutput = new StringBuilder();
+        private long pendingTraceOutputTime = 0;
+        private double traceTokens = -1.0;
+        private long traceTokensTime = 0;
+        private int suppressedTraceLines = 0;
+        private long suppressedTraceTime = 0;
+        private ArrayDeque<String> suppressedTraceTail = new ArrayDeque<>();
+        private long autoResumeStartTime = 0;
+        private long autoResumeCount = 0;
+        private long autoResumeTotalTime = 0;
 
         public SessionRunner() {
         }
 
         public void run() {
+            ThreadUtils.startDaemonThread(getThreadFactory(), new EventWaiter(swfSession), "SWF event waiter");
+            long idleWait = MIN_RUNNER_WAIT_MS;
             while (true) {
                 if (cancelRunner) {
                     break;
                 }
+                boolean active = false;
                 try {
-                    boolean logPointOrFalseCondition = false;
                     while (swfSession.getEventCount() > 0) {
+                        active = true;
                         DebugEvent event = swfSession.nextEvent();
-                        if (handleEvent(event)) {
-                            logPointOrFalseCondition = true;
-                        }
+                        handleEvent(event);
                         if (cancelRunner) {
                             // this might get set when handling the event
                             break;
@@ -261,35 +418,248 @@ public class SWFDebugSession extends DebugSession {
                         // this might get set when handling one of the events
                         break;
                     }
+                    if (active) {
+                        // let the event waiter know that the queue is empty
+                        synchronized (runnerMonitor) {
+                            runnerMonitor.notifyAll();
+                        }
+                    }
+                    flushExpiredTraceOutput();
                     while (swfSession.isSuspended() && !waitingForResume) {
-                        handleSuspended(logPointOrFalseCondition);
+                        active = true;
+                        if (swfSession.getEventCount() > 0) {
+                            // the BreakEvent for this suspension must be
+                            // handled first to know whether to resume
+                            break;
+                        }
+                        // any trace() output must appear before the stop
+                        flushTraceOutput();
+                        handleSuspended();
                     }
                     for (IsolateWithState isolateWithState : isolates) {
                         Isolate isolate = isolateWithState.isolate;
                         IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
                         while (isolateSession.isSuspended() && !isolateWithState.waitingForResume) {
+                            active = true;
+                            if (swfSession.getEventCount() > 0) {
+                                break;
+                            }
+                            flushTraceOutput();
                             handleIsolateSuspended(isolateWithState);
                         }
                     }
                 } catch (NotConnectedException e) {
                     cancelRunner = true;
+                    flushTraceOutput();
                     StringWriter writer = new StringWriter();
                     e.printStackTrace(new PrintWriter(writer));
                     sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
                     sendEvent(new TerminatedEvent());
                 } catch (Exception e) {
+                    flushTraceOutput();
                     StringWriter writer = new StringWriter();
                     e.printStackTrace(new PrintWriter(writer));
                     sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
                 }
-                try {
-                    java.lang.Thread.sleep(50);
-                } catch (InterruptedException ie) {
+                if (active) {
+                    idleWait = MIN_RUNNER_WAIT_MS;
+                } else {
+                    long pendingDelay = getPendingTraceOutputDelay();
+                    if (pendingDelay != -1 && pendingDelay < idleWait) {
+                        // don't hold on to trace() output for longer than
+                        // the batch delay or summary interval while waiting
+                        waitForSignal(Math.max(pendingDelay, MIN_RUNNER_WAIT_MS));
+                    } else {
+                        idleWait = waitForSignal(idleWait);
+                    }
+                }
+            }
+            flushTraceOutput();
+            signalRunner();
+        }
+
+        /**
+         * A SWF that calls trace() every frame can produce more output than
+         * the editor can display. Lines are passed through while tokens are
+         * available, refilling at the rate limit. Once the tokens run out,
+         * lines are dropped, except for the most recent few, and a summary
+         * is sent periodically.
+         */
+        private void limitTraceOutput(String output) {
+            if (traceOutputRateLimit <= 0) {
+                // rate limiting is disabled
+                appendTraceOutput(output);
+                return;
+            }
+            long now = System.nanoTime();
+            if (traceTokens < 0.0) {
+                traceTokens = traceOutputRateLimit;
+            } else {
+                double elapsedSeconds = (now - traceTokensTime) / 1000000000.0;
+                traceTokens = Math.min(traceOutputRateLimit, traceTokens + elapsedSeconds * traceOutputRateLimit);
+            }
+            traceTokensTime = now;
+            if (suppressedTraceLines > 0
+                    && (now - suppressedTraceTime) / 1000000L >= TRACE_SUPPRESSED_SUMMARY_INTERVAL_MS) {
+                flushSuppressedTraceOutput();
+            }
+            if (suppressedTraceLines == 0 && traceTokens >= 1.0) {
+                traceTokens -= 1.0;
+                appendTraceOutput(output);
+                return;
+            }
+            if (suppressedTraceLines == 0) {
+                suppressedTraceTime = now;
+            }
+            suppressedTraceLines++;
+            if (traceOutputTailLines > 0) {
+                if (suppressedTraceTail.size() == traceOutputTailLines) {
+                    suppressedTraceTail.removeFirst();
+                }
+                suppressedTraceTail.addLast(output);
+            }
+        }
+
+        private void flushSuppressedTraceOutput() {
+            if (suppressedTraceLines == 0) {
+                return;
+            }
+            int droppedLines = suppressedTraceLines - suppressedTraceTail.size();
+            if (droppedLines > 0) {
+                String summary = "[" + droppedLines + " line" + (droppedLines == 1 ? "" : "s")
+                        + " of trace() output suppressed]\n";
+                appendTraceOutput(summary);
+            }
+            while (!suppressedTraceTail.isEmpty()) {
+                appendTraceOutput(suppressedTraceTail.removeFirst());
+            }
+            suppressedTraceLines = 0;
+        }
+
+        /**
+         * Consecutive lines of trace() output are combined into a single
+         * OutputEvent, until the batch reaches the maximum size or delay.
+         */
+        private void appendTraceOutput(String output) {
+            if (traceOutputBatchSize <= 0 || traceOutputBatchDelay <= 0) {
+                // batching is disabled
+                sendOutputEvent(output);
+                return;
+            }
+            if (pendingTraceOutput.length() == 0) {
+                pendingTraceOutputTime = System.nanoTime();
+            }
+            pendingTraceOutput.append(output);
+            if (pendingTraceOutput.length() >= traceOutputBatchSize) {
+                sendPendingTraceOutput();
+            }
+        }
+
+        /**
+         * Sends all trace() output that has been held back, including the
+         * summary of any suppressed lines.
+         */
+        private void flushTraceOutput() {
+            flushSuppressedTraceOutput();
+            sendPendingTraceOutput();
+        }
+
+        private void flushExpiredTraceOutput() {
+            long now = System.nanoTime();
+            if (suppressedTraceLines > 0
+                    && (now - suppressedTraceTime) / 1000000L >= TRACE_SUPPRESSED_SUMMARY_INTERVAL_MS) {
+                flushSuppressedTraceOutput();
+            }
+            if (pendingTraceOutput.length() > 0
+                    && (now - pendingTraceOutputTime) / 1000000L >= traceOutputBatchDelay) {
+                sendPendingTraceOutput();
+            }
+        }
+
+        private void sendPendingTraceOutput() {
+            if (pendingTraceOutput.length() == 0) {
+                return;
+            }
+            // we can't populate the location for a trace() to the
+            // console because the result of getFrames() is empty
+            // when the runtime isn't suspended
+            sendOutputEvent(pendingTraceOutput.toString());
+            pendingTraceOutput.setLength(0);
+        }
+
+        /**
+         * Returns the number of milliseconds until the pending trace() output
+         * or suppressed summary should be sent, or -1 if there is nothing
+         * pending.
+         */
+        private long getPendingTraceOutputDelay() {
+            long now = System.nanoTime();
+            long result = -1;
+            if (pendingTraceOutput.length() > 0) {
+                long elapsed = (now - pendingTraceOutputTime) / 1000000L;
+                result = Math.max(0, traceOutputBatchDelay - elapsed);
+            }
+            if (suppressedTraceLines > 0) {
+                long elapsed = (now - suppressedTraceTime) / 1000000L;
+                long summaryDelay = Math.max(0, TRACE_SUPPRESSED_SUMMARY_INTERVAL_MS - elapsed);
+                if (result == -1 || summaryDelay < result) {
+                    result = summaryDelay;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Waits until the event waiter or a request signals that something
+         * changed, or until the timeout expires. Returns the timeout to use
+         * the next time that nothing happens, which doubles each time.
+         */
+        private long waitForSignal(long timeout) {
+            synchronized (runnerMonitor) {
+                if (runnerSignalCount == lastSignalCount) {
+                    try {
+                        runnerMonitor.wait(timeout);
+                    } catch (InterruptedException e) {
+                    }
                 }
+                lastWakeTime = System.nanoTime();
+                if (runnerSignalCount != lastSignalCount) {
+                    lastSignalCount = runnerSignalCount;
+                    return MIN_RUNNER_WAIT_MS;
+                }
+            }
+            return Math.min(timeout * 2, MAX_RUNNER_WAIT_MS);
+        }
+
+        /**
+         * When tracing, measures the time from handling the BreakEvent for a
+         * logpoint or unsatisfied condition to the runtime acknowledging the
+         * resume. This limits how many hits per second can be handled.
+         */
+        private void traceAutoResume() {
+            if (!TRACE) {
+                return;
+            }
+            long roundTrip = System.nanoTime() - autoResumeStartTime;
+            autoResumeCount++;
+            autoResumeTotalTime += roundTrip;
+            double average = autoResumeTotalTime / (double) autoResumeCount / 1000000.0;
+            System.err.print(String.format(
+                    "\r\n\r\n*****R auto-resume round trip %1$.3f ms (average %2$.3f ms, about %3$.0f hits per second)",
+                    roundTrip / 1000000.0, average, 1000.0 / average));
+        }
+
+        private void sendStoppedEvent(StoppedEvent.StoppedBody body) {
+            if (TRACE) {
+                // time between the runner waking up and notifying the editor
+                double latency = (System.nanoTime() - lastWakeTime) / 1000000.0;
+                System.err.print(String.format("\r\n\r\n*****S %1$s: stopped event latency %2$.3f ms", body.reason,
+                        latency));
             }
+            sendEvent(new StoppedEvent(body));
         }
 
-        private boolean handleEvent(DebugEvent event)
+        private void handleEvent(DebugEvent event)
                 throws NotConnectedException, NoResponseException, NotSuspendedException {
             if (event instanceof TraceEvent) {
                 TraceEvent traceEvent = (TraceEvent) event;
@@ -300,24 +670,38 @@ public class SWFDebugSession extends DebugSession {
                 } else if (output.charAt(output.length() - 1) != '\n') {
                     output += '\n';
                 }
-                OutputEvent.OutputBody body = new OutputEvent.OutputBody();
-                // we can't populate the location for a trace() to the
-                // console because the result of getFrames() is empty
-                // when the runtime isn't suspended
-                body.output = output;
-                sendEvent(new OutputEvent(body));
-            } else if (event instanceof FaultEvent) {
+                limitTraceOutput(output);
+                return;
+            }
+            // keep the trace() output in order with any other events
+            flushTraceOutput();
+            if (event instanceof FaultEvent) {
                 FaultEvent faultEvent = (FaultEvent) event;
+                // the decision is made here, before the runtime suspends, so
+                // that filtered exceptions are resumed without involving
+                // the editor
+                boolean stop = shouldStopOnFault(faultEvent);
+                if (!stop) {
+                    autoResumeStartTime = System.nanoTime();
+                }
                 if (faultEvent.isolateId == Isolate.DEFAULT_ID) {
                     previousFaultEvent = faultEvent;
+                    resumeAfterFault = !stop;
                 } else {
                     for (IsolateWithState isolateWithState : isolates) {
                         if (faultEvent.isolateId == isolateWithState.isolate.getId()) {
                             isolateWithState.previousFaultEvent = faultEvent;
+                            isolateWithState.resumeAfterFault = !stop;
                             break;
                         }
                     }
                 }
+                if (!stop && faultEvent instanceof ExceptionFault
+                        && ((ExceptionFault) faultEvent).willExceptionBeCaught()) {
+                    // a caught exception that is filtered out is handled by
+                    // the application, so it shouldn't flood the console
+                    return;
+                }
                 String output = faultEvent.information + "\n" + faultEvent.stackTrace();
                 if (output.charAt(output.length() - 1) != '\n') {
                     output += '\n';
@@ -330,46 +714,33 @@ public class SWFDebugSession extends DebugSession {
 
             } else if (event instanceof BreakEvent) {
                 BreakEvent breakEvent = (BreakEvent) event;
-                for (BreakpointExtras extras : savedBreakpointExtras.values()) {
-                    Location location = extras.location;
-                    boolean logPointOrFalseCondition = false;
-                    if (breakEvent.fileId == location.getFile().getId() && breakEvent.line == location.getLine()) {
-                        boolean conditionIsTrue = true;
-                        if (extras.condition != null) {
-                            conditionIsTrue = false;
-                            Frame[] swfFrames = swfSession.getFrames();
-                            if (swfFrames.length > 0) {
-                                Frame swfFrame = swfFrames[0];
-                                try {
-                                    ASTBuilder builder = new ASTBuilder(false);
-                                    ValueExp result = builder.parse(new StringReader(extras.condition));
-                                    Object evaluateResult = result
-                                            .evaluate(new SWFExpressionContext(swfSession, location.getIsolateId(),
-                                                    swfFrame));
-                                    if (evaluateResult instanceof flash.tools.debugger.Variable) {
-                                        flash.tools.debugger.Variable evaluateVar = (flash.tools.debugger.Variable) evaluateResult;
-                                        conditionIsTrue = ECMA.toBoolean(evaluateVar.getValue());
-                                    } else if (evaluateResult instanceof Value) {
-                                        Value evaluateValue = (Value) evaluateResult;
-                                        conditionIsTrue = ECMA.toBoolean(evaluateValue);
-                                    } else {
-                                        conditionIsTrue = Boolean.TRUE.equals(evaluateResult);
-                                    }
-                                    logPointOrFalseCondition = !conditionIsTrue;
-                                } catch (Exception e) {
-                                }
-                            }
-                        }
-                        if (conditionIsTrue && extras.logMessage != null) {
-                            OutputEvent.OutputBody body = new OutputEvent.OutputBody();
-                            populateLocationInOutputBody(breakEvent.isolateId, body);
-                            body.output = extras.logMessage;
-                            sendEvent(new OutputEvent(body));
-                            logPointOrFalseCondition = true;
+                List<InstalledBreakpoint> hitBreakpoints = breakpointHits
+                        .get(new BreakpointHitKey(breakEvent.isolateId, breakEvent.fileId, breakEvent.line));
+                boolean resume = false;
+                if (hitBreakpoints != null && hitBreakpoints.size() > 0) {
+                    // a function breakpoint and a line breakpoint may share a
+                    // location. each one counts its hit and logs its message,
+                    // and any one of them may stop.
+                    resume = true;
+                    for (InstalledBreakpoint hitBreakpoint : hitBreakpoints) {
+                        if (checkBreakpointHit(hitBreakpoint, breakEvent.isolateId)) {
+                            resume = false;
                         }
                     }
-                    if (logPointOrFalseCondition) {
-                        return true;
+                }
+                if (resume) {
+                    autoResumeStartTime = System.nanoTime();
+                }
+                // the decision is applied when the isolate suspends, so that a
+                // logpoint in one isolate can't resume a stop in another one
+                if (breakEvent.isolateId == Isolate.DEFAULT_ID) {
+                    resumeAfterBreak = resume;
+                } else {
+                    for (IsolateWithState isolateWithState : isolates) {
+                        if (breakEvent.isolateId == isolateWithState.isolate.getId()) {
+                            isolateWithState.resumeAfterBreak = resume;
+                            break;
+                        }
                     }
                 }
             } else if (event instanceof IsolateCreateEvent) {
@@ -378,6 +749,7 @@ public class SWFDebugSession extends DebugSession {
                 Isolate isolate = isolateEvent.isolate;
                 IsolateWithState isolateWithState = new IsolateWithState(isolate);
                 isolates.add(isolateWithState);
+                updateSourceFileIndex(isolate.getId());
 
                 ThreadEvent.ThreadBody body = new ThreadEvent.ThreadBody();
                 body.reason = ThreadEvent.REASON_STARTED;
@@ -390,15 +762,25 @@ public class SWFDebugSession extends DebugSession {
                 IsolateExitEvent isolateEvent = (IsolateExitEvent) event;
                 Isolate isolate = isolateEvent.isolate;
                 isolates.removeIf((isolateWithState) -> isolate.equals(isolateWithState.isolate));
+                sourceFileIndexes.remove(isolate.getId());
+                invalidateSuspensionCache(isolate.getId());
+                handles.invalidate(isolate.getId());
 
                 ThreadEvent.ThreadBody body = new ThreadEvent.ThreadBody();
                 body.reason = ThreadEvent.REASON_EXITED;
                 body.threadID = isolate.getId();
                 sendEvent(new ThreadEvent(body));
             } else if (event instanceof SwfLoadedEvent) {
+                SwfLoadedEvent loadEvent = (SwfLoadedEvent) event;
+                updateSourceFileIndex(loadEvent.isolateId);
                 refreshPendingBreakpoints();
             } else if (event instanceof SwfUnloadedEvent) {
                 SwfUnloadedEvent unloadEvent = (SwfUnloadedEvent) event;
+                // SwfUnloadedEvent doesn't tell us which isolate the SWF is
+                // from, but each index can check for its own unloaded SWFs
+                for (SourceFileIndex sourceFileIndex : sourceFileIndexes.values()) {
+                    sourceFileIndex.prune();
+                }
                 SwfInfo[] swfs = swfSession.getSwfs();
                 if (swfs.length == 0) {
                     // this probably shouldn't happen, but let's try to be safe
@@ -417,18 +799,20 @@ public class SWFDebugSession extends DebugSession {
                     }
                 }
             }
-            return false;
         }
 
-        private void handleSuspended(boolean logPoint)
-                throws NotConnectedException, NoResponseException, NotSuspendedException {
+        private void handleSuspended() throws NotConnectedException, NoResponseException, NotSuspendedException {
+            // only the BreakEvent for this suspension may resume it
+            boolean resumeAfterBreak = SWFDebugSession.this.resumeAfterBreak;
+            SWFDebugSession.this.resumeAfterBreak = false;
             StoppedEvent.StoppedBody body = null;
             switch (swfSession.suspendReason()) {
                 case SuspendReason.ScriptLoaded: {
                     if (initialized) {
                         if (configDone) {
+                            updateSourceFileIndexes();
                             refreshPendingBreakpoints();
-                            swfSession.resume();
+                            resumeWithoutStopping(Isolate.DEFAULT_ID);
                         } else {
                             waitingForResume = true;
                         }
@@ -440,10 +824,11 @@ public class SWFDebugSession extends DebugSession {
                     break;
                 }
                 case SuspendReason.Breakpoint: {
-                    if (logPoint) {
-                        // if it was a logpoint, then resume
-                        // immediately because we should not stop
-                        swfSession.resume();
+                    if (resumeAfterBreak) {
+                        // if it was a logpoint or the condition was false,
+                        // then resume immediately because we should not stop
+                        resumeWithoutStopping(Isolate.DEFAULT_ID);
+                        traceAutoResume();
                     } else {
                         body = new StoppedEvent.StoppedBody();
                         body.reason = StoppedEvent.REASON_BREAKPOINT;
@@ -456,6 +841,14 @@ public class SWFDebugSession extends DebugSession {
                     break;
                 }
                 case SuspendReason.Fault: {
+                    if (resumeAfterFault) {
+                        // the exception didn't match the exception
+                        // breakpoints, so resume immediately
+                        resumeAfterFault = false;
+                        resumeWithoutStopping(Isolate.DEFAULT_ID);
+                        traceAutoResume();
+                        break;
+                    }
                     body = new StoppedEvent.StoppedBody();
                     body.reason = StoppedEvent.REASON_EXCEPTION;
                     body.description = "Paused on exception";
@@ -478,7 +871,7 @@ public class SWFDebugSession extends DebugSession {
             if (body != null) {
                 waitingForResume = true;
                 body.threadId = Isolate.DEFAULT_ID;
-                sendEvent(new StoppedEvent(body));
+                sendStoppedEvent(body);
             }
         }
 
@@ -486,14 +879,21 @@ public class SWFDebugSession extends DebugSession {
                 throws NotConnectedException, NoResponseException, NotSuspendedException {
             Isolate isolate = isolateWithState.isolate;
             IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
+            boolean resumeAfterBreak = isolateWithState.resumeAfterBreak;
+            isolateWithState.resumeAfterBreak = false;
 
             StoppedEvent.StoppedBody body = null;
             switch (isolateSession.suspendReason()) {
                 case SuspendReason.ScriptLoaded: {
-                    isolateSession.resume();
+                    resumeWithoutStopping(isolate.getId());
                     break;
                 }
                 case SuspendReason.Breakpoint: {
+                    if (resumeAfterBreak) {
+                        resumeWithoutStopping(isolate.getId());
+                        traceAutoResume();
+                        break;
+                    }
                     body = new StoppedEvent.StoppedBody();
                     body.reason = StoppedEvent.REASON_BREAKPOINT;
                     break;
@@ -504,6 +904,12 @@ public class SWFDebugSession extends DebugSession {
                     break;
                 }
                 case SuspendReason.Fault: {
+                    if (isolateWithState.resumeAfterFault) {
+                        isolateWithState.resumeAfterFault = false;
+                        resumeWithoutStopping(isolate.getId());
+                        traceAutoResume();
+                        break;
+                    }
                     body = new StoppedEvent.StoppedBody();
                     body.reason = StoppedEvent.REASON_EXCEPTION;
                     body.description = "Paused on exception";
@@ -527,24 +933,85 @@ public class SWFDebugSession extends DebugSession {
             if (body != null) {
                 isolateWithState.waitingForResume = true;
                 body.threadId = isolate.getId();
-                sendEvent(new StoppedEvent(body));
+                sendStoppedEvent(body);
+            }
+        }
+
+        /**
+         * Checks the condition and the hit condition of a breakpoint that was
+         * hit, and logs its message, if it is a logpoint. Returns true if the
+         * breakpoint should stop.
+         */
+        private boolean checkBreakpointHit(InstalledBreakpoint installedBreakpoint, int isolateId)
+                throws NotConnectedException {
+            if (!installedBreakpoint.hasExtras()) {
+                return true;
+            }
+            boolean logPointOrFalseCondition = false;
+            boolean conditionIsTrue = true;
+            // the condition, the log message, and the output location
+            // all use the same frames
+            Frame[] swfFrames = null;
+            if (installedBreakpoint.compiledCondition != null) {
+                conditionIsTrue = false;
+                swfFrames = getFramesForIsolate(isolateId);
+                if (swfFrames.length > 0) {
+                    Frame swfFrame = swfFrames[0];
+                    try {
+                        Object evaluateResult = installedBreakpoint.compiledCondition.evaluate(
+                                new SWFExpressionContext(swfSession, isolateId, swfFrame,
+                                        suspensionCache, 0));
+                        if (evaluateResult instanceof flash.tools.debugger.Variable) {
+                            flash.tools.debugger.Variable evaluateVar = (flash.tools.debugger.Variable) evaluateResult;
+                            conditionIsTrue = ECMA.toBoolean(evaluateVar.getValue());
+                        } else if (evaluateResult instanceof Value) {
+                            Value evaluateValue = (Value) evaluateResult;
+                            conditionIsTrue = ECMA.toBoolean(evaluateValue);
+                        } else {
+                            conditionIsTrue = Boolean.TRUE.equals(evaluateResult);
+                        }
+                        logPointOrFalseCondition = !conditionIsTrue;
+                    } catch (Exception e) {
+                    }
+                }
+            }
+            boolean hitConditionIsTrue = true;
+            if (conditionIsTrue) {
+                // a request may be resetting the hit count
+                synchronized (breakpointLock) {
+                    hitConditionIsTrue = installedBreakpoint.checkHitCondition();
+                }
+            }
+            if (!hitConditionIsTrue) {
+                // not enough hits yet
+                conditionIsTrue = false;
+                logPointOrFalseCondition = true;
+            }
+            if (conditionIsTrue && installedBreakpoint.logMessageTemplate != null) {
+                if (swfFrames == null) {
+                    swfFrames = getFramesForIsolate(isolateId);
+                }
+                SWFExpressionContext context = null;
+                if (installedBreakpoint.logMessageTemplate.hasExpressions() && swfFrames.length > 0) {
+                    context = new SWFExpressionContext(swfSession, isolateId, swfFrames[0],
+                            suspensionCache, 0);
+                }
+                // even without expressions, the escaped braces need
+                // to be replaced
+                String output = installedBreakpoint.logMessageTemplate.evaluate(context);
+                OutputEvent.OutputBody body = new OutputEvent.OutputBody();
+                populateLocationInOutputBody(swfFrames, body);
+                body.output = output;
+                sendEvent(new OutputEvent(body));
+                logPointOrFalseCondition = true;
             }
+            return !logPointOrFalseCondition;
         }
 
         private void populateLocationInOutputBody(int isolateId, OutputEvent.OutputBody body) {
             try {
                 Frame[] swfFrames = getFramesForIsolate(isolateId);
-                if (swfFrames.length > 0) {
-                    Frame swfFrame = swfFrames[0];
-                    Location location = swfFrame.getLocation();
-                    SourceFile file = location.getFile();
-                    if (file != null) {
-                        Source source = sourceFileToSource(file);
-                        body.source = source;
-                        body.line = location.getLine();
-                        body.column = 0;
-                    }
-                }
+                populateLocationInOutputBody(swfFrames, body);
             } catch (NotConnectedException e) {
                 StringWriter writer = new StringWriter();
                 e.printStackTrace(new PrintWriter(writer));
@@ -552,12 +1019,28 @@ public class SWFDebugSession extends DebugSession {
                 return;
             }
         }
+
+        private void populateLocationInOutputBody(Frame[] swfFrames, OutputEvent.OutputBody body) {
+            if (swfFrames.length > 0) {
+                Frame swfFrame = swfFrames[0];
+                Location location = swfFrame.getLocation();
+                SourceFile file = location.getFile();
+                if (file != null) {
+                    Source source = sourceFileToSource(file);
+                    body.source = source;
+                    body.line = location.getLine();
+                    body.column = 0;
+                }
+            }
+        }
     }
 
     public SWFDebugSession() {
         super(false);
-        pendingBreakpoints = new HashMap<>();
-        savedBreakpointExtras = new HashMap<>();
+        registerRequestArguments(LaunchRequest.REQUEST_COMMAND, SWFLaunchRequestArguments.class);
+        registerRequestArguments(AttachRequest.REQUEST_COMMAND, SWFAttachRequestArguments.class);
+        pendingBreakpoints = new ConcurrentHashMap<>();
+        installedBreakpoints = new ConcurrentHashMap<>();
         String flexlibPath = System.getProperty(FLEXLIB_PROPERTY);
         if (flexlibPath != null) {
             flexlib = Paths.get(flexlibPath);
@@ -614,9 +1097,23 @@ public class SWFDebugSession extends DebugSession {
         OutputEvent.OutputBody body = new OutputEvent.OutputBody();
         sendEvent(new OutputEvent(body));
 
+        clientSupportsVariablePaging = args.supportsVariablePaging;
+
         Capabilities capabilities = new Capabilities();
         capabilities.supportsExceptionInfoRequest = true;
         capabilities.supportsConditionalBreakpoints = true;
+        capabilities.supportsHitConditionalBreakpoints = true;
+        capabilities.supportsFunctionBreakpoints = true;
+        capabilities.supportsBreakpointLocationsRequest = true;
+        capabilities.supportsExceptionOptions = true;
+        capabilities.supportsExceptionFilterOptions = true;
+        capabilities.exceptionBreakpointFilters = new ExceptionBreakpointsFilter[] {
+                new ExceptionBreakpointsFilter(ExceptionBreakpointSettings.FILTER_UNCAUGHT, "Uncaught Exceptions",
+                        "Pause when an exception is not handled by a catch block", true, true,
+                        "Comma-separated exception types, like RangeError, flash.errors.IOError"),
+                new ExceptionBreakpointsFilter(ExceptionBreakpointSettings.FILTER_CAUGHT, "Caught Exceptions",
+                        "Pause when an exception is thrown, even if it is handled by a catch block", false, true,
+                        "Comma-separated exception types, like RangeError, flash.errors.IOError") };
         capabilities.supportsLogPoints = true;
         capabilities.supportsSetVariable = true;
         capabilities.supportsConfigurationDoneRequest = true;
@@ -625,10 +1122,31 @@ public class SWFDebugSession extends DebugSession {
     }
 
     public void launch(Response response, LaunchRequest.LaunchRequestArguments args) {
+        // the session manager is shared by every session in this process, and
+        // it may listen for only one runtime at a time
+        synchronized (SESSION_MANAGER_LOCK) {
+            launchWithSessionManager(response, args);
+        }
+    }
+
+    /**
+     * Options that are omitted from the launch or attach configuration use
+     * the defaults, so they are defined in only one place.
+     */
+    private void setTraceOutputOptions(Integer batchSize, Integer batchDelay, Integer rateLimit, Integer tailLines) {
+        traceOutputBatchSize = batchSize != null ? batchSize : DEFAULT_TRACE_OUTPUT_BATCH_SIZE;
+        traceOutputBatchDelay = batchDelay != null ? batchDelay : DEFAULT_TRACE_OUTPUT_BATCH_DELAY_MS;
+        traceOutputRateLimit = rateLimit != null ? rateLimit : DEFAULT_TRACE_OUTPUT_RATE_LIMIT;
+        traceOutputTailLines = tailLines != null ? tailLines : DEFAULT_TRACE_OUTPUT_TAIL_LINES;
+    }
+
+    private void launchWithSessionManager(Response response, LaunchRequest.LaunchRequestArguments args) {
         SWFLaunchRequestArguments swfArgs = (SWFLaunchRequestArguments) args;
         ThreadSafeSessionManager manager = ThreadSafeBootstrap.sessionManager();
         swfSession = null;
         swfRunProcess = null;
+        setTraceOutputOptions(swfArgs.traceOutputBatchSize, swfArgs.traceOutputBatchDelay,
+                swfArgs.traceOutputRateLimit, swfArgs.traceOutputTailLines);
         forwardedPortPlatform = null;
         forwardedPort = -1;
         try {
@@ -795,14 +1313,26 @@ public class SWFDebugSession extends DebugSession {
         sendResponse(response);
         cancelRunner = false;
         if (swfSession != null) {
-            sessionThread = new java.lang.Thread(new SessionRunner());
-            sessionThread.start();
+            sessionThread = ThreadUtils.startThread(getThreadFactory(), new SessionRunner(), "SWF session runner");
         } else if (swfRunProcess != null) {
-            sessionThread = new java.lang.Thread(new RunProcessRunner());
-            sessionThread.start();
+            // no need for a thread to poll the process because it will
+            // notify us when it exits
+            swfRunProcess.onExit().thenAccept(this::handleRunProcessExit);
         }
     }
 
+    private void handleRunProcessExit(Process process) {
+        if (cancelRunner) {
+            // the editor disconnected, so it doesn't need to be notified
+            return;
+        }
+        cancelRunner = true;
+        ExitedEvent.ExitedBody body = new ExitedEvent.ExitedBody();
+        body.exitCode = process.exitValue();
+        sendEvent(new ExitedEvent(body));
+        sendEvent(new TerminatedEvent());
+    }
+
     private class RunLaunchNotification implements ILaunchNotification {
         public void notify(IOException e) {
             if (e == null) {
@@ -878,6 +1408,8 @@ public class SWFDebugSession extends DebugSession {
 
     public void attach(Response response, AttachRequest.AttachRequestArguments args) {
         SWFAttachRequestArguments swfArgs = (SWFAttachRequestArguments) args;
+        setTraceOutputOptions(swfArgs.traceOutputBatchSize, swfArgs.traceOutputBatchDelay,
+                swfArgs.traceOutputRateLimit, swfArgs.traceOutputTailLines);
         forwardedPortPlatform = null;
         forwardedPort = -1;
         Path platformSdkPath = null;
@@ -913,7 +1445,10 @@ public class SWFDebugSession extends DebugSession {
             }
         }
 
-        boolean success = attach(response, swfArgs);
+        boolean success = false;
+        synchronized (SESSION_MANAGER_LOCK) {
+            success = attach(response, swfArgs);
+        }
         if (!success) {
             cleanupForwardedPort();
         }
@@ -1019,8 +1554,7 @@ public class SWFDebugSession extends DebugSession {
             }
 
             cancelRunner = false;
-            sessionThread = new java.lang.Thread(new SessionRunner());
-            sessionThread.start();
+            sessionThread = ThreadUtils.startThread(getThreadFactory(), new SessionRunner(), "SWF session runner");
         }
         response.success = success;
         sendResponse(response);
@@ -1028,20 +1562,34 @@ public class SWFDebugSession extends DebugSession {
     }
 
     public void disconnect(Response response, Request.RequestArguments args) {
+        dispose();
+        sendResponse(response);
+    }
+
+    /**
+     * Terminates the runtime and stops the session runner, if they are still
+     * active. Called when the editor disconnects, or when the connection to
+     * the editor is lost.
+     */
+    public void dispose() {
         cleanupForwardedPort();
-        if (sessionThread != null) {
+        if (sessionThread != null || swfRunProcess != null) {
             cancelRunner = true;
+            signalRunner();
             sessionThread = null;
         }
         if (swfSession != null) {
             swfSession.terminate();
             swfSession = null;
         }
+        sourceFileIndexes.clear();
+        breakpointHits.clear();
+        suspensionCache.invalidateAll();
+        handles.clear();
         if (swfRunProcess != null) {
             swfRunProcess.destroy();
             swfRunProcess = null;
         }
-        sendResponse(response);
     }
 
     private void cleanupForwardedPort() {
@@ -1060,6 +1608,7 @@ public class SWFDebugSession extends DebugSession {
 
     public void configurationDone(Response response, ConfigurationDoneRequest.ConfigurationDoneArguments arguments) {
         try {
+            updateSourceFileIndexes();
             refreshPendingBreakpoints();
             swfSession.resume();
             stopWaitingForResume(Isolate.DEFAULT_ID);
@@ -1082,238 +1631,629 @@ public class SWFDebugSession extends DebugSession {
 
     public void setBreakpoints(Response response, SetBreakpointsRequest.SetBreakpointsArguments arguments) {
         String path = arguments.source.path;
-        List<Breakpoint> breakpoints = setBreakpoints(path, arguments.breakpoints);
+        List<Breakpoint> breakpoints = null;
+        synchronized (breakpointLock) {
+            breakpoints = setBreakpoints(path, arguments.breakpoints);
+        }
         sendResponse(response, new SetBreakpointsResponseBody(breakpoints));
     }
 
     private List<Breakpoint> setBreakpoints(String path, SourceBreakpoint[] breakpoints) {
         // start by trying to find the file ID for this path
-        Path pathAsPath = Paths.get(path);
+        Path key = Paths.get(path).normalize();
         // using MXML may create more than one source file with the same path
         List<SourceFile> foundSourceFiles = new ArrayList<>();
         boolean badExtension = false;
         try {
-            SwfInfo[] swfs = swfSession.getSwfs();
-            for (SwfInfo swf : swfs) {
-                if (swf == null) {
-                    // for some reason, the array may contain null values (vscode-swf-debug#25)
-                    continue;
-                }
-                SourceFile[] sourceFiles = swf.getSourceList(swfSession);
-                for (SourceFile sourceFile : sourceFiles) {
-                    Path sourceFilePath = null;
-                    try {
-                        String sourceFileFullPath = sourceFile.getFullPath();
-                        sourceFilePath = Paths.get(sourceFileFullPath);
-                    } catch (InvalidPathException e) {
-                        badExtension = true;
-                        continue;
-                    }
-                    // we can't check if the String paths are equal due to
-                    // file system case sensitivity.
-                    if (pathAsPath.equals(sourceFilePath)) {
-                        if (path.endsWith(FILE_EXTENSION_AS) || path.endsWith(FILE_EXTENSION_MXML)
-                                || path.endsWith(FILE_EXTENSION_HX)) {
-                            foundSourceFiles.add(sourceFile);
-                        } else {
-                            badExtension = true;
-                        }
-                    }
-                }
-            }
+            // SWFs that were still loading when their event was handled may
+            // be ready now
+            updateSourceFileIndex(Isolate.DEFAULT_ID);
+            foundSourceFiles.addAll(sourceFileIndexes.get(Isolate.DEFAULT_ID).getSourceFiles(key));
             for (IsolateWithState isolateWithState : isolates) {
                 if (foundSourceFiles.size() > 0) {
                     break;
                 }
-                Isolate isolate = isolateWithState.isolate;
-                IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
-                swfs = isolateSession.getSwfs();
-                for (SwfInfo swf : swfs) {
-                    SourceFile[] sourceFiles = swf.getSourceList(swfSession);
-                    for (SourceFile sourceFile : sourceFiles) {
-                        Path sourceFilePath = null;
-                        try {
-                            String sourceFileFullPath = sourceFile.getFullPath();
-                            sourceFilePath = Paths.get(sourceFileFullPath);
-                        } catch (InvalidPathException e) {
-                            badExtension = true;
-                            continue;
-                        }
-                        // we can't check if the String paths are equal due to
-                        // file system case sensitivity.
-                        if (pathAsPath.equals(sourceFilePath)) {
-                            if (path.endsWith(FILE_EXTENSION_AS) || path.endsWith(FILE_EXTENSION_MXML)
-                                    || path.endsWith(FILE_EXTENSION_HX)) {
-                                foundSourceFiles.add(sourceFile);
-                            } else {
-                                badExtension = true;
-                            }
-                        }
-                    }
-                }
+                int isolateId = isolateWithState.isolate.getId();
+                updateSourceFileIndex(isolateId);
+                foundSourceFiles.addAll(sourceFileIndexes.get(isolateId).getSourceFiles(key));
             }
-        } catch (InProgressException e) {
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
-        } catch (NoResponseException e) {
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
-        }
-        if (foundSourceFiles.size() == 0 && !badExtension) {
-            // the file was not found, but it has a supported extension,
-            // so we'll try to add it again later.
-            // SWF is a streaming format, so not all bytecode is loaded
-            // immediately.
-            pendingBreakpoints.put(path, new PendingBreakpoints(breakpoints));
-            foundSourceFiles.clear();
-        }
-        try {
-            // clear all old breakpoints for this file because our new list
-            // doesn't specify exactly which ones are cleared
-            for (Location location : swfSession.getBreakpointList()) {
-                if (pathAsPath.equals(Paths.get(location.getFile().getFullPath()))) {
-                    swfSession.clearBreakpoint(location);
-                }
+            if (foundSourceFiles.size() > 0 && !path.endsWith(FILE_EXTENSION_AS)
+                    && !path.endsWith(FILE_EXTENSION_MXML) && !path.endsWith(FILE_EXTENSION_HX)) {
+                badExtension = true;
+                foundSourceFiles.clear();
             }
-            savedBreakpointExtras.remove(path);
         } catch (NoResponseException e) {
             StringWriter writer = new StringWriter();
             e.printStackTrace(new PrintWriter(writer));
             sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
-        } catch (NotConnectedException e) {
-            StringWriter writer = new StringWriter();
-            e.printStackTrace(new PrintWriter(writer));
-            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
         }
+        Map<Integer, InstalledBreakpoint> oldBreakpoints = installedBreakpoints.get(path);
+        if (oldBreakpoints == null) {
+            oldBreakpoints = Collections.emptyMap();
+        }
+        // the breakpoint event handler may be reading the old map, so build
+        // a new one instead of modifying it
+        Map<Integer, InstalledBreakpoint> newBreakpoints = new LinkedHashMap<>();
         List<Breakpoint> result = new ArrayList<>();
         for (int i = 0, count = breakpoints.length; i < count; i++) {
             SourceBreakpoint sourceBreakpoint = breakpoints[i];
             int sourceLine = sourceBreakpoint.line;
+            InstalledBreakpoint installedBreakpoint = newBreakpoints.get(sourceLine);
+            if (installedBreakpoint == null) {
+                installedBreakpoint = oldBreakpoints.get(sourceLine);
+                if (installedBreakpoint == null) {
+                    installedBreakpoint = new InstalledBreakpoint(nextBreakpointID, sourceLine);
+                    nextBreakpointID++;
+                }
+                updateBreakpointOptions(installedBreakpoint, sourceBreakpoint.condition,
+                        sourceBreakpoint.hitCondition, sourceBreakpoint.logMessage);
+                if (installedBreakpoint.location != null && (installedBreakpoint.getErrorMessage() != null
+                        || !containsSourceFile(foundSourceFiles, installedBreakpoint.location.getFile()))) {
+                    // a condition or log message is invalid, or the source
+                    // file was unloaded or replaced
+                    uninstallBreakpoint(installedBreakpoint);
+                }
+                if (installedBreakpoint.location == null && installedBreakpoint.getErrorMessage() == null
+                        && foundSourceFiles.size() > 0) {
+                    installBreakpoint(installedBreakpoint, foundSourceFiles);
+                }
+                newBreakpoints.put(sourceLine, installedBreakpoint);
+            }
             Breakpoint responseBreakpoint = new Breakpoint();
+            responseBreakpoint.id = installedBreakpoint.id;
             responseBreakpoint.line = sourceLine;
-            responseBreakpoint.id = nextBreakpointID;
-            nextBreakpointID++;
-            if (foundSourceFiles.size() == 0) {
-                // we couldn't find the file, so we can't verify this breakpoint
-                responseBreakpoint.verified = false;
-            } else {
-                // we found the file, so let's try to add this breakpoint
-                // it may not work, but at least we tried!
-                for (SourceFile foundSourceFile : foundSourceFiles) {
-                    responseBreakpoint.source = sourceFileToSource(foundSourceFile);
-                    try {
-                        Location breakpointLocation = swfSession.setBreakpoint(foundSourceFile.getId(), sourceLine);
-                        if (breakpointLocation != null) {
-                            verifyBreakpoint(path, breakpointLocation, sourceBreakpoint, responseBreakpoint);
-                            if (responseBreakpoint.verified) {
-                                break;
-                            }
-                        }
-                        for (IsolateWithState isolateWithState : isolates) {
-                            Isolate isolate = isolateWithState.isolate;
-                            IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
-                            breakpointLocation = isolateSession.setBreakpoint(foundSourceFile.getId(), sourceLine);
-                            if (breakpointLocation != null) {
-                                verifyBreakpoint(path, breakpointLocation, sourceBreakpoint, responseBreakpoint);
-                                if (responseBreakpoint.verified) {
-                                    break;
-                                }
-                            }
-                        }
-                        if (responseBreakpoint.verified) {
-                            break;
-                        }
-                        // setBreakpoint() may return null if the breakpoint
-                        // could not be set. that's fine. the user will simply
-                        // see that the breakpoint is not verified.
-                    } catch (NoResponseException e) {
-                        StringWriter writer = new StringWriter();
-                        e.printStackTrace(new PrintWriter(writer));
-                        sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
-                        responseBreakpoint.verified = false;
-                    } catch (NotConnectedException e) {
-                        StringWriter writer = new StringWriter();
-                        e.printStackTrace(new PrintWriter(writer));
-                        sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
-                        responseBreakpoint.verified = false;
-                    }
-                }
-            }
+            if (installedBreakpoint.location != null) {
+                // I don't know if the line could change, but might as well
+                // use the one returned by the location
+                responseBreakpoint.line = installedBreakpoint.location.getLine();
+                responseBreakpoint.source = sourceFileToSource(installedBreakpoint.location.getFile());
+                responseBreakpoint.verified = true;
+            } else if (foundSourceFiles.size() > 0) {
+                responseBreakpoint.source = sourceFileToSource(foundSourceFiles.get(foundSourceFiles.size() - 1));
+            }
+            responseBreakpoint.message = installedBreakpoint.getErrorMessage();
             result.add(responseBreakpoint);
         }
+        // only the lines that no longer have a breakpoint need to be cleared
+        for (InstalledBreakpoint oldBreakpoint : oldBreakpoints.values()) {
+            if (newBreakpoints.get(oldBreakpoint.line) != oldBreakpoint) {
+                uninstallBreakpoint(oldBreakpoint);
+            }
+        }
+        if (newBreakpoints.isEmpty()) {
+            installedBreakpoints.remove(path);
+        } else {
+            installedBreakpoints.put(path, newBreakpoints);
+        }
+        boolean hasVerified = false;
+        for (Breakpoint breakpoint : result) {
+            if (breakpoint.verified) {
+                hasVerified = true;
+                break;
+            }
+        }
+        if (result.size() == 0 || hasVerified || badExtension) {
+            // if any of the breakpoints are verified, that's good enough. we
+            // shouldn't keep trying the other unverified ones because they
+            // will probably always fail
+            pendingBreakpoints.remove(path);
+        } else {
+            // the file was not found, but it has a supported extension,
+            // so we'll try to add it again when more of its source files are
+            // loaded. SWF is a streaming format, so not all bytecode is
+            // loaded immediately.
+            pendingBreakpoints.put(path, new PendingBreakpoints(key, breakpoints));
+        }
         return result;
     }
 
-    private void verifyBreakpoint(String path, Location breakpointLocation, SourceBreakpoint sourceBreakpoint,
-            Breakpoint responseBreakpoint) {
-        // I don't know if the line could change, but might as well
-        // use the one returned by the location
-        responseBreakpoint.line = breakpointLocation.getLine();
-        responseBreakpoint.verified = true;
-        String logMessage = sourceBreakpoint.logMessage;
-        String condition = sourceBreakpoint.condition;
-        if (logMessage != null || condition != null) {
-            savedBreakpointExtras.put(path, new BreakpointExtras(breakpointLocation, logMessage, condition));
+    /**
+     * Indexes the source files of any SWFs in the isolate that have finished
+     * loading since the last update, and returns the new source files.
+     */
+    private List<SourceFile> updateSourceFileIndex(int isolateId) throws NoResponseException {
+        SourceFileIndex sourceFileIndex = sourceFileIndexes.computeIfAbsent(isolateId, id -> new SourceFileIndex());
+        SwfInfo[] swfs = null;
+        if (isolateId == Isolate.DEFAULT_ID) {
+            swfs = swfSession.getSwfs();
+        } else {
+            swfs = swfSession.getWorkerSession(isolateId).getSwfs();
+        }
+        List<SourceFile> newSourceFiles = sourceFileIndex.update(swfSession, swfs);
+        for (SourceFile sourceFile : newSourceFiles) {
+            Path key = SourceFileIndex.toKey(sourceFile.getFullPath());
+            if (key != null) {
+                newlyIndexedPaths.add(key);
+            }
         }
+        return newSourceFiles;
     }
 
-    private void refreshPendingBreakpoints() {
-        if (pendingBreakpoints.isEmpty()) {
-            return;
+    private void updateSourceFileIndexes() throws NoResponseException {
+        updateSourceFileIndex(Isolate.DEFAULT_ID);
+        for (IsolateWithState isolateWithState : isolates) {
+            updateSourceFileIndex(isolateWithState.isolate.getId());
         }
-        // if we weren't able to add some breakpoints earlier because we
-        // we couldn't find the source file, try again!
-        Iterator<String> iterator = pendingBreakpoints.keySet().iterator();
-        while (iterator.hasNext()) {
-            String path = iterator.next();
-            PendingBreakpoints pending = pendingBreakpoints.get(path);
-            int idToRestore = nextBreakpointID;
-            nextBreakpointID = pending.idStart;
-            List<Breakpoint> breakpoints = setBreakpoints(path, pending.breakpoints);
-            nextBreakpointID = idToRestore;
-            boolean hasVerified = false;
-            for (Breakpoint breakpoint : breakpoints) {
-                // this breakpoint was unverified, but it may be verified
-                // now, so let the editor know the updated status
-                BreakpointEvent.BreakpointBody body = new BreakpointEvent.BreakpointBody();
-                body.breakpoint = breakpoint;
-                body.reason = BreakpointEvent.REASON_CHANGED;
-                if (breakpoint.verified) {
-                    // if any of the breakpoints are verified, that's good
-                    // enough. we shouldn't keep trying the other unverified
-                    // ones because they will probably always fail
-                    hasVerified = true;
-                }
-                sendEvent(new BreakpointEvent(body));
-            }
-            if (hasVerified) {
-                iterator.remove();
-            }
-        }
-    }
-
-    public void setExceptionBreakpoints(Response response, Request.RequestArguments arguments) {
-        sendResponse(response);
     }
 
-    public void continueCommand(Response response, ContinueRequest.ContinueArguments arguments) {
+    /**
+     * Parses the condition once, instead of every time that the breakpoint
+     * is hit. If the condition can't be parsed, the breakpoint won't be set.
+     */
+    private void compileCondition(InstalledBreakpoint installedBreakpoint) {
+        installedBreakpoint.compiledCondition = null;
+        installedBreakpoint.conditionError = null;
+        if (installedBreakpoint.condition == null) {
+            return;
+        }
         try {
-            if (arguments.threadId == Isolate.DEFAULT_ID) {
-                if (!swfSession.isSuspended()) {
-                    response.success = false;
-                    sendResponse(response);
-                    return;
-                }
-                swfSession.resume();
-                stopWaitingForResume(Isolate.DEFAULT_ID);
-            } else {
-                // worker
-                boolean foundWorker = false;
-                for (IsolateWithState isolateWithState : isolates) {
-                    Isolate isolate = isolateWithState.isolate;
-                    if (arguments.threadId == isolate.getId()) {
+            ASTBuilder builder = new ASTBuilder(false);
+            installedBreakpoint.compiledCondition = builder.parse(new StringReader(installedBreakpoint.condition));
+        } catch (ParseException e) {
+            installedBreakpoint.conditionError = "Invalid condition: " + e.getMessage();
+        } catch (Exception e) {
+            // actually, just catch all parsing exceptions
+            installedBreakpoint.conditionError = "Invalid condition: " + installedBreakpoint.condition;
+        }
+    }
+
+    private void updateBreakpointOptions(InstalledBreakpoint installedBreakpoint, String condition,
+            String hitCondition, String logMessage) {
+        if (!Objects.equals(logMessage, installedBreakpoint.logMessage)) {
+            installedBreakpoint.logMessage = logMessage;
+            compileLogMessage(installedBreakpoint);
+        }
+        if (condition != null && condition.trim().length() == 0) {
+            condition = null;
+        }
+        if (!Objects.equals(condition, installedBreakpoint.condition)) {
+            installedBreakpoint.condition = condition;
+            compileCondition(installedBreakpoint);
+        }
+        if (hitCondition != null && hitCondition.trim().length() == 0) {
+            hitCondition = null;
+        }
+        if (!Objects.equals(hitCondition, installedBreakpoint.hitCondition)) {
+            installedBreakpoint.hitCondition = hitCondition;
+            compileHitCondition(installedBreakpoint);
+        }
+    }
+
+    public void setFunctionBreakpoints(Response response,
+            SetFunctionBreakpointsRequest.SetFunctionBreakpointsArguments arguments) {
+        List<Breakpoint> breakpoints = null;
+        synchronized (breakpointLock) {
+            breakpoints = setFunctionBreakpoints(arguments.breakpoints);
+        }
+        sendResponse(response, new SetFunctionBreakpointsResponseBody(breakpoints));
+    }
+
+    private List<Breakpoint> setFunctionBreakpoints(FunctionBreakpoint[] breakpoints) {
+        Map<String, InstalledBreakpoint> oldBreakpoints = functionBreakpoints;
+        // the breakpoint event handler may be reading the old map, so build
+        // a new one instead of modifying it
+        Map<String, InstalledBreakpoint> newBreakpoints = new LinkedHashMap<>();
+        List<Breakpoint> result = new ArrayList<>();
+        for (FunctionBreakpoint functionBreakpoint : breakpoints) {
+            String name = functionBreakpoint.name != null ? functionBreakpoint.name.trim() : "";
+            InstalledBreakpoint installedBreakpoint = newBreakpoints.get(name);
+            String message = null;
+            if (installedBreakpoint == null) {
+                installedBreakpoint = oldBreakpoints.get(name);
+                if (installedBreakpoint == null) {
+                    installedBreakpoint = new InstalledBreakpoint(nextBreakpointID, 0);
+                    nextBreakpointID++;
+                }
+                updateBreakpointOptions(installedBreakpoint, functionBreakpoint.condition,
+                        functionBreakpoint.hitCondition, null);
+                if (installedBreakpoint.location != null && installedBreakpoint.getErrorMessage() != null) {
+                    uninstallBreakpoint(installedBreakpoint);
+                }
+                if (installedBreakpoint.location == null && installedBreakpoint.getErrorMessage() == null) {
+                    message = installFunctionBreakpoint(installedBreakpoint, name);
+                }
+                newBreakpoints.put(name, installedBreakpoint);
+            }
+            result.add(functionBreakpointToBreakpoint(installedBreakpoint, message));
+        }
+        for (Map.Entry<String, InstalledBreakpoint> oldEntry : oldBreakpoints.entrySet()) {
+            if (newBreakpoints.get(oldEntry.getKey()) != oldEntry.getValue()) {
+                uninstallBreakpoint(oldEntry.getValue());
+            }
+        }
+        functionBreakpoints = newBreakpoints;
+        return result;
+    }
+
+    private Breakpoint functionBreakpointToBreakpoint(InstalledBreakpoint installedBreakpoint, String message) {
+        Breakpoint breakpoint = new Breakpoint();
+        breakpoint.id = installedBreakpoint.id;
+        if (installedBreakpoint.location != null) {
+            breakpoint.line = installedBreakpoint.location.getLine();
+            breakpoint.source = sourceFileToSource(installedBreakpoint.location.getFile());
+            breakpoint.verified = true;
+        }
+        breakpoint.message = installedBreakpoint.getErrorMessage();
+        if (breakpoint.message == null) {
+            breakpoint.message = message;
+        }
+        return breakpoint;
+    }
+
+    /**
+     * Sets a breakpoint on the first line of the function with the specified
+     * name, searching the main isolate first. Returns a message for the
+     * editor, if the breakpoint couldn't be set, or the name was ambiguous.
+     */
+    private String installFunctionBreakpoint(InstalledBreakpoint installedBreakpoint, String name) {
+        if (name.length() == 0) {
+            return "Function name is empty";
+        }
+        List<FunctionNameIndex.FunctionLocation> functionLocations = new ArrayList<>();
+        try {
+            updateSourceFileIndexes();
+        } catch (NoResponseException e) {
+            StringWriter writer = new StringWriter();
+            e.printStackTrace(new PrintWriter(writer));
+            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+        }
+        SourceFileIndex mainIndex = sourceFileIndexes.get(Isolate.DEFAULT_ID);
+        if (mainIndex != null) {
+            functionLocations.addAll(mainIndex.findFunctions(swfSession, name));
+        }
+        for (IsolateWithState isolateWithState : isolates) {
+            if (functionLocations.size() > 0) {
+                break;
+            }
+            SourceFileIndex isolateIndex = sourceFileIndexes.get(isolateWithState.isolate.getId());
+            if (isolateIndex != null) {
+                functionLocations.addAll(isolateIndex.findFunctions(swfSession, name));
+            }
+        }
+        if (functionLocations.size() == 0) {
+            return "Function not found: " + name;
+        }
+        FunctionNameIndex.FunctionLocation installedFunction = null;
+        for (FunctionNameIndex.FunctionLocation functionLocation : functionLocations) {
+            installedBreakpoint.line = functionLocation.line;
+            installBreakpoint(installedBreakpoint, Collections.singletonList(functionLocation.sourceFile));
+            if (installedBreakpoint.location != null) {
+                installedFunction = functionLocation;
+                break;
+            }
+        }
+        if (installedFunction == null) {
+            return "Could not set a breakpoint in function: " + name;
+        }
+        Set<String> functionNames = new HashSet<>();
+        for (FunctionNameIndex.FunctionLocation functionLocation : functionLocations) {
+            functionNames.add(functionLocation.functionName);
+        }
+        if (functionNames.size() > 1) {
+            return "Matched " + functionNames.size() + " functions. Using " + installedFunction.functionName + ".";
+        }
+        return null;
+    }
+
+    /**
+     * Function breakpoints that could not be set may be in a SWF that
+     * hasn't been loaded yet.
+     */
+    private void refreshFunctionBreakpoints() {
+        for (Map.Entry<String, InstalledBreakpoint> entry : functionBreakpoints.entrySet()) {
+            InstalledBreakpoint installedBreakpoint = entry.getValue();
+            if (installedBreakpoint.location != null || installedBreakpoint.getErrorMessage() != null) {
+                continue;
+            }
+            String message = installFunctionBreakpoint(installedBreakpoint, entry.getKey());
+            if (installedBreakpoint.location == null) {
+                continue;
+            }
+            BreakpointEvent.BreakpointBody body = new BreakpointEvent.BreakpointBody();
+            body.breakpoint = functionBreakpointToBreakpoint(installedBreakpoint, message);
+            body.reason = BreakpointEvent.REASON_CHANGED;
+            sendEvent(new BreakpointEvent(body));
+        }
+    }
+
+    private void compileLogMessage(InstalledBreakpoint installedBreakpoint) {
+        installedBreakpoint.logMessageTemplate = null;
+        installedBreakpoint.logMessageError = null;
+        if (installedBreakpoint.logMessage == null) {
+            return;
+        }
+        try {
+            installedBreakpoint.logMessageTemplate = LogMessageTemplate.parse(installedBreakpoint.logMessage);
+        } catch (ParseException e) {
+            installedBreakpoint.logMessageError = "Invalid log message: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Hit conditions may be a number of hits to break on, or a number
+     * prefixed with ==, >=, or % (to break on every multiple).
+     */
+    private void compileHitCondition(InstalledBreakpoint installedBreakpoint) {
+        installedBreakpoint.hitOperator = null;
+        installedBreakpoint.hitTarget = 0;
+        installedBreakpoint.hitCount = 0;
+        installedBreakpoint.hitConditionError = null;
+        if (installedBreakpoint.hitCondition == null) {
+            return;
+        }
+        Matcher matcher = HIT_CONDITION_PATTERN.matcher(installedBreakpoint.hitCondition);
+        int hitTarget = -1;
+        if (matcher.matches()) {
+            try {
+                hitTarget = Integer.parseInt(matcher.group(2));
+            } catch (NumberFormatException e) {
+            }
+        }
+        String hitOperator = hitTarget == -1 ? null : matcher.group(1);
+        if (hitOperator == null) {
+            hitOperator = HIT_CONDITION_EQUAL;
+        }
+        if (hitTarget == -1 || (HIT_CONDITION_MODULO.equals(hitOperator) && hitTarget == 0)) {
+            installedBreakpoint.hitConditionError = "Invalid hit condition: " + installedBreakpoint.hitCondition
+                    + ". Expected a number, optionally prefixed with ==, >=, or %.";
+            return;
+        }
+        installedBreakpoint.hitOperator = hitOperator;
+        installedBreakpoint.hitTarget = hitTarget;
+    }
+
+    private boolean containsSourceFile(List<SourceFile> sourceFiles, SourceFile sourceFile) {
+        for (SourceFile otherSourceFile : sourceFiles) {
+            if (otherSourceFile.getId() == sourceFile.getId()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void installBreakpoint(InstalledBreakpoint installedBreakpoint, List<SourceFile> foundSourceFiles) {
+        int sourceLine = installedBreakpoint.line;
+        // we found the file, so let's try to add this breakpoint
+        // it may not work, but at least we tried!
+        for (SourceFile foundSourceFile : foundSourceFiles) {
+            try {
+                // if another breakpoint is already set at the same line, share
+                // its location instead of asking the runtime to set it again
+                Location breakpointLocation = findInstalledLocation(Isolate.DEFAULT_ID, foundSourceFile.getId(),
+                        sourceLine);
+                if (breakpointLocation == null) {
+                    breakpointLocation = swfSession.setBreakpoint(foundSourceFile.getId(), sourceLine);
+                }
+                if (breakpointLocation != null) {
+                    addBreakpointHit(installedBreakpoint, breakpointLocation);
+                    return;
+                }
+                for (IsolateWithState isolateWithState : isolates) {
+                    Isolate isolate = isolateWithState.isolate;
+                    breakpointLocation = findInstalledLocation(isolate.getId(), foundSourceFile.getId(), sourceLine);
+                    if (breakpointLocation != null) {
+                        addBreakpointHit(installedBreakpoint, breakpointLocation);
+                        return;
+                    }
+                    IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
+                    breakpointLocation = isolateSession.setBreakpoint(foundSourceFile.getId(), sourceLine);
+                    if (breakpointLocation != null) {
+                        addBreakpointHit(installedBreakpoint, breakpointLocation);
+                        return;
+                    }
+                }
+                // setBreakpoint() may return null if the breakpoint
+                // could not be set. that's fine. the user will simply
+                // see that the breakpoint is not verified.
+            } catch (NoResponseException e) {
+                StringWriter writer = new StringWriter();
+                e.printStackTrace(new PrintWriter(writer));
+                sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+            } catch (NotConnectedException e) {
+                StringWriter writer = new StringWriter();
+                e.printStackTrace(new PrintWriter(writer));
+                sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Returns the location of a breakpoint that was already set for the same
+     * line, or null. The runtime may have moved it to a different line, so
+     * the requested line is compared instead of the location's line.
+     */
+    private Location findInstalledLocation(int isolateId, int fileId, int line) {
+        for (List<InstalledBreakpoint> hitBreakpoints : breakpointHits.values()) {
+            for (InstalledBreakpoint otherBreakpoint : hitBreakpoints) {
+                Location location = otherBreakpoint.location;
+                if (location != null && otherBreakpoint.line == line && location.getIsolateId() == isolateId
+                        && location.getFile().getId() == fileId) {
+                    return location;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void addBreakpointHit(InstalledBreakpoint installedBreakpoint, Location location) {
+        installedBreakpoint.location = location;
+        BreakpointHitKey hitKey = new BreakpointHitKey(location);
+        List<InstalledBreakpoint> hitBreakpoints = breakpointHits.get(hitKey);
+        if (hitBreakpoints == null) {
+            // the session runner may be reading the list
+            hitBreakpoints = new CopyOnWriteArrayList<>();
+            breakpointHits.put(hitKey, hitBreakpoints);
+        }
+        hitBreakpoints.add(installedBreakpoint);
+    }
+
+    private void uninstallBreakpoint(InstalledBreakpoint installedBreakpoint) {
+        Location location = installedBreakpoint.location;
+        if (location == null) {
+            return;
+        }
+        installedBreakpoint.location = null;
+        BreakpointHitKey hitKey = new BreakpointHitKey(location);
+        List<InstalledBreakpoint> hitBreakpoints = breakpointHits.get(hitKey);
+        if (hitBreakpoints != null) {
+            hitBreakpoints.remove(installedBreakpoint);
+            if (hitBreakpoints.size() > 0) {
+                // another breakpoint is still set at the same location
+                return;
+            }
+            breakpointHits.remove(hitKey);
+        }
+        try {
+            int isolateId = location.getIsolateId();
+            if (isolateId == Isolate.DEFAULT_ID) {
+                swfSession.clearBreakpoint(location);
+            } else {
+                swfSession.getWorkerSession(isolateId).clearBreakpoint(location);
+            }
+        } catch (NoResponseException e) {
+            StringWriter writer = new StringWriter();
+            e.printStackTrace(new PrintWriter(writer));
+            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+        } catch (NotConnectedException e) {
+            StringWriter writer = new StringWriter();
+            e.printStackTrace(new PrintWriter(writer));
+            sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+        }
+    }
+
+    /**
+     * If we weren't able to add some breakpoints earlier because we couldn't
+     * find the source file, try again, but only for the files that have been
+     * indexed since the last refresh.
+     */
+    private void refreshPendingBreakpoints() {
+        synchronized (breakpointLock) {
+            if (newlyIndexedPaths.isEmpty()) {
+                return;
+            }
+            Set<Path> changedPaths = new HashSet<>();
+            Iterator<Path> pathIterator = newlyIndexedPaths.iterator();
+            while (pathIterator.hasNext()) {
+                changedPaths.add(pathIterator.next());
+                pathIterator.remove();
+            }
+            refreshFunctionBreakpoints();
+            if (pendingBreakpoints.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<String, PendingBreakpoints> entry : pendingBreakpoints.entrySet()) {
+                PendingBreakpoints pending = entry.getValue();
+                if (!changedPaths.contains(pending.key)) {
+                    continue;
+                }
+                String path = entry.getKey();
+                Set<Integer> previouslyVerified = new HashSet<>();
+                Map<Integer, InstalledBreakpoint> oldBreakpoints = installedBreakpoints.get(path);
+                if (oldBreakpoints != null) {
+                    for (InstalledBreakpoint oldBreakpoint : oldBreakpoints.values()) {
+                        if (oldBreakpoint.location != null) {
+                            previouslyVerified.add(oldBreakpoint.id);
+                        }
+                    }
+                }
+                // the IDs of the breakpoints will be the same as before
+                List<Breakpoint> breakpoints = setBreakpoints(path, pending.breakpoints);
+                for (Breakpoint breakpoint : breakpoints) {
+                    if (breakpoint.verified == previouslyVerified.contains(breakpoint.id)) {
+                        // the editor already knows the status of this one
+                        continue;
+                    }
+                    BreakpointEvent.BreakpointBody body = new BreakpointEvent.BreakpointBody();
+                    body.breakpoint = breakpoint;
+                    body.reason = BreakpointEvent.REASON_CHANGED;
+                    sendEvent(new BreakpointEvent(body));
+                }
+            }
+        }
+    }
+
+    public void breakpointLocations(Response response,
+            BreakpointLocationsRequest.BreakpointLocationsArguments arguments) {
+        List<BreakpointLocation> breakpoints = new ArrayList<>();
+        String path = arguments.source.path;
+        int startLine = arguments.line;
+        int endLine = arguments.endLine != null ? arguments.endLine : startLine;
+        if (swfSession != null && path != null && startLine > 0 && endLine >= startLine) {
+            try {
+                Path key = Paths.get(path).normalize();
+                // using MXML may create more than one source file with the
+                // same path, so any of them may have code on a line
+                BitSet executableLines = new BitSet();
+                updateSourceFileIndex(Isolate.DEFAULT_ID);
+                SourceFileIndex sourceFileIndex = sourceFileIndexes.get(Isolate.DEFAULT_ID);
+                List<SourceFile> sourceFiles = sourceFileIndex.getSourceFiles(key);
+                for (IsolateWithState isolateWithState : isolates) {
+                    if (sourceFiles.size() > 0) {
+                        break;
+                    }
+                    int isolateId = isolateWithState.isolate.getId();
+                    updateSourceFileIndex(isolateId);
+                    sourceFileIndex = sourceFileIndexes.get(isolateId);
+                    sourceFiles = sourceFileIndex.getSourceFiles(key);
+                }
+                for (SourceFile sourceFile : sourceFiles) {
+                    executableLines.or(sourceFileIndex.getExecutableLines(sourceFile));
+                }
+                for (int line = executableLines.nextSetBit(startLine); line != -1
+                        && line <= endLine; line = executableLines.nextSetBit(line + 1)) {
+                    breakpoints.add(new BreakpointLocation(line));
+                }
+            } catch (InvalidPathException e) {
+            } catch (NoResponseException e) {
+                StringWriter writer = new StringWriter();
+                e.printStackTrace(new PrintWriter(writer));
+                sendErrorOutputEvent("Exception in debugger: " + writer.toString() + "\n");
+            }
+        }
+        sendResponse(response, new BreakpointLocationsResponseBody(breakpoints));
+    }
+
+    public void setExceptionBreakpoints(Response response,
+            SetExceptionBreakpointsRequest.SetExceptionBreakpointsArguments arguments) {
+        // replacing the settings also discards the cached decisions
+        exceptionBreakpointSettings = new ExceptionBreakpointSettings(arguments);
+        sendResponse(response);
+    }
+
+    private String getExceptionTypeName(ExceptionFault exceptionFault) {
+        Value thrownValue = exceptionFault.getThrownValue();
+        if (thrownValue == null) {
+            return "";
+        }
+        return ExceptionBreakpointSettings.normalizeTypeName(thrownValue.getTypeName());
+    }
+
+    private boolean shouldStopOnFault(FaultEvent faultEvent) {
+        if (!(faultEvent instanceof ExceptionFault)) {
+            // other faults, like script timeouts, always stop
+            return true;
+        }
+        ExceptionFault exceptionFault = (ExceptionFault) faultEvent;
+        return exceptionBreakpointSettings.shouldStop(getExceptionTypeName(exceptionFault),
+                exceptionFault.willExceptionBeCaught());
+    }
+
+    public void continueCommand(Response response, ContinueRequest.ContinueArguments arguments) {
+        try {
+            if (arguments.threadId == Isolate.DEFAULT_ID) {
+                if (!swfSession.isSuspended()) {
+                    response.success = false;
+                    sendResponse(response);
+                    return;
+                }
+                swfSession.resume();
+                stopWaitingForResume(Isolate.DEFAULT_ID);
+            } else {
+                // worker
+                boolean foundWorker = false;
+                for (IsolateWithState isolateWithState : isolates) {
+                    Isolate isolate = isolateWithState.isolate;
+                    if (arguments.threadId == isolate.getId()) {
                         foundWorker = true;
                         IsolateSession isolateSession = swfSession.getWorkerSession(isolate.getId());
                         if (!isolateSession.isSuspended()) {
@@ -1532,9 +2472,9 @@ public class SWFDebugSession extends DebugSession {
         Frame[] swfFrames = null;
         try {
             if (isolateSession != null) {
-                swfFrames = isolateSession.getFrames();
+                swfFrames = getFramesForIsolate(threadId);
             } else {
-                swfFrames = swfSession.getFrames();
+                swfFrames = getFramesForIsolate(Isolate.DEFAULT_ID);
             }
         } catch (NotConnectedException e) {
         }
@@ -1564,8 +2504,8 @@ public class SWFDebugSession extends DebugSession {
             Location location = swfFrame.getLocation();
             SourceFile file = location.getFile();
             StackFrame stackFrame = new StackFrame();
-            // include ids for both the isolate and the frame
-            stackFrame.id = new IsolateAndFrame(threadId, i).toCombinedID();
+            // the handle refers to both the isolate and the frame
+            stackFrame.id = handles.create(threadId, i, 0);
             stackFrame.name = swfFrame.getCallSignature();
             if (file != null) {
                 Source source = sourceFileToSource(file);
@@ -1583,10 +2523,16 @@ public class SWFDebugSession extends DebugSession {
 
     public void scopes(Response response, ScopesRequest.ScopesArguments arguments) {
         List<Scope> scopes = new ArrayList<>();
-        IsolateAndFrame isolateAndFrame = new IsolateAndFrame(arguments.frameId);
+        if (!handles.isValid(arguments.frameId)) {
+            response.success = false;
+            sendResponse(response);
+            return;
+        }
+        int isolateId = handles.getIsolateId(arguments.frameId);
+        int frameIndex = handles.getFrameIndex(arguments.frameId);
         Frame[] swfFrames = null;
         try {
-            swfFrames = getFramesForIsolate(isolateAndFrame.isolateId);
+            swfFrames = getFramesForIsolate(isolateId);
         } catch (NotConnectedException e) {
         }
         if (swfFrames == null) {
@@ -1594,24 +2540,20 @@ public class SWFDebugSession extends DebugSession {
             sendResponse(response);
             return;
         }
-        if (isolateAndFrame.frameId >= 0 && isolateAndFrame.frameId < swfFrames.length) {
-            FaultEvent faultEvent = getPreviousFaultEvent(isolateAndFrame.isolateId);
+        if (frameIndex >= 0 && frameIndex < swfFrames.length) {
+            FaultEvent faultEvent = getPreviousFaultEvent(isolateId);
             if (faultEvent != null) {
                 ExceptionFault fault = (ExceptionFault) faultEvent;
                 Value thrownValue = fault.getThrownValue();
-                IsolateAndFrameOrValue faultIsolateAndFrameOrValue = new IsolateAndFrameOrValue(Isolate.DEFAULT_ID, 0,
-                        thrownValue.getId());
                 Scope exceptionScope = new Scope();
                 exceptionScope.name = "Exception";
-                exceptionScope.variablesReference = faultIsolateAndFrameOrValue.toVariablesReference();
+                exceptionScope.variablesReference = handles.create(isolateId, 0, thrownValue.getId());
                 scopes.add(exceptionScope);
             }
 
             Scope localScope = new Scope();
             localScope.name = "Locals";
-            IsolateAndFrameOrValue isolateAndFrameOrValue = new IsolateAndFrameOrValue(isolateAndFrame.isolateId,
-                    isolateAndFrame.frameId, LOCALS_VALUE_ID);
-            localScope.variablesReference = isolateAndFrameOrValue.toVariablesReference();
+            localScope.variablesReference = handles.create(isolateId, frameIndex, LOCALS_VALUE_ID);
             scopes.add(localScope);
         }
 
@@ -1631,79 +2573,69 @@ public class SWFDebugSession extends DebugSession {
         return null;
     }
 
+    /**
+     * Fetching the frames walks the entire stack, so the same snapshot is
+     * shared by every request until the isolate resumes.
+     */
     private Frame[] getFramesForIsolate(int isolateID) throws NotConnectedException {
-        if (isolateID == Isolate.DEFAULT_ID) {
-            return swfSession.getFrames();
-        }
-        IsolateSession isolateSession = swfSession.getWorkerSession(isolateID);
-        return isolateSession.getFrames();
+        return suspensionCache.getFrames(swfSession, isolateID);
     }
 
     public void variables(Response response, VariablesRequest.VariablesArguments arguments) {
         List<Variable> variables = new ArrayList<>();
+        long handle = arguments.variablesReference;
+        if (!handles.isValid(handle)) {
+            // the isolate has resumed since the handle was created
+            sendResponse(response, new VariablesResponseBody(variables));
+            return;
+        }
+        int isolateId = handles.getIsolateId(handle);
+        int frameIndex = handles.getFrameIndex(handle);
+        long valueId = handles.getValueId(handle);
         try {
-            IsolateAndFrameOrValue isolateAndFrameOrValue = new IsolateAndFrameOrValue(arguments.variablesReference);
-            flash.tools.debugger.Variable[] members = getVariables(isolateAndFrameOrValue);
-            mapMembersToVariables(isolateAndFrameOrValue, members, arguments.filter, arguments.start, arguments.count,
-                    variables);
+            flash.tools.debugger.Variable[] members = null;
+            if (VariablesRequest.FILTER_INDEXED.equals(arguments.filter)) {
+                members = getIndexedVariables(isolateId, valueId, arguments.start, arguments.count);
+            } else {
+                members = getVariables(isolateId, frameIndex, valueId);
+            }
+            mapMembersToVariables(isolateId, frameIndex, valueId, members, arguments.filter, variables);
         } catch (PlayerDebugException e) {
             // ignore
         }
         sendResponse(response, new VariablesResponseBody(variables));
     }
 
-    private void mapMembersToVariables(IsolateAndFrameOrValue isolateAndFrameOrValue,
-            flash.tools.debugger.Variable[] members, String filter, Integer start, Integer count, List<Variable> result)
-            throws PlayerDebugException {
+    /**
+     * If the filter is indexed, the members are expected to be a page of
+     * indexed members that is already sorted.
+     */
+    private void mapMembersToVariables(int isolateId, int frameIndex, long valueId,
+            flash.tools.debugger.Variable[] members, String filter, List<Variable> result) throws PlayerDebugException {
         boolean isThis = false;
-        IsolateSession isolateSession = getIsolateSession(isolateAndFrameOrValue.isolateId);
-        if (isolateSession != null) {
-            Value swfThisValue = isolateSession.getValue(Value.THIS_ID);
+        IsolateSession isolateSession = getIsolateSession(isolateId);
+        if (isolateSession != null || swfSession.isSuspended()) {
+            Value swfThisValue = suspensionCache.getValue(swfSession, isolateId, Value.THIS_ID);
             if (swfThisValue != null) {
-                isThis = swfThisValue.getId() == isolateAndFrameOrValue.valueId;
-            }
-        } else if (swfSession.isSuspended()) {
-            Value swfThisValue = swfSession.getValue(Value.THIS_ID);
-            if (swfThisValue != null) {
-                isThis = swfThisValue.getId() == isolateAndFrameOrValue.valueId;
+                isThis = swfThisValue.getId() == valueId;
             }
         }
-        List<Integer> indexes = null;
         boolean requireIndexed = VariablesRequest.FILTER_INDEXED.equals(filter);
-        if (requireIndexed) {
-            indexes = new ArrayList<>();
-        }
         for (flash.tools.debugger.Variable member : members) {
             if (member.isAttributeSet(VariableAttribute.IS_STATIC)) {
                 // we're showing non-static members only
                 continue;
             }
-            int index = -1;
             String memberName = member.getName();
-            if (filter != null) {
-                try {
-                    index = Integer.parseInt(memberName);
-                    if (!requireIndexed) {
-                        continue;
-                    }
-                    int startIndex = start != null ? start : 0;
-                    if (index < startIndex) {
-                        continue;
-                    }
-                    if (count != null && count != 0 && index >= (startIndex + count)) {
-                        continue;
-                    }
-                } catch (NumberFormatException e) {
-                    if (requireIndexed) {
-                        continue;
-                    }
-                }
+            int index = IndexedMembers.parseIndex(memberName);
+            if (filter != null && !requireIndexed && index != -1) {
+                continue;
             }
             Value memberValue = member.getValue();
             Variable variable = new Variable();
             variable.name = memberName;
             variable.type = memberValue.getTypeName();
-            if (isolateAndFrameOrValue.valueId == LOCALS_VALUE_ID) {
+            if (valueId == LOCALS_VALUE_ID) {
                 variable.evaluateName = memberName;
             } else if (isThis) {
                 if (index != -1) {
@@ -1714,23 +2646,25 @@ public class SWFDebugSession extends DebugSession {
             }
             long id = memberValue.getId();
             if (id != Value.UNKNOWN_ID) {
-                IsolateAndFrameOrValue memberIsolateAndFrameOrValue = new IsolateAndFrameOrValue(
-                        isolateAndFrameOrValue.isolateId, isolateAndFrameOrValue.frameId, id);
                 variable.value = memberValue.getTypeName();
-                variable.variablesReference = memberIsolateAndFrameOrValue.toVariablesReference();
-                flash.tools.debugger.Variable[] subMembers = memberValue.getMembers(swfSession);
-                int namedVariables = 0;
-                int indexedVariables = 0;
-                for (flash.tools.debugger.Variable subMember : subMembers) {
-                    try {
-                        Integer.parseInt(subMember.getName());
-                        indexedVariables++;
-                    } catch (NumberFormatException e) {
-                        namedVariables++;
+                variable.variablesReference = Long.valueOf(handles.create(isolateId, frameIndex, id));
+                if (clientSupportsVariablePaging && mayHaveIndexedMembers(memberValue)) {
+                    // the counts are needed only to split large arrays into
+                    // pages. for other objects, counting would fetch members
+                    // that may never be expanded, so the counts are omitted.
+                    int namedVariables = 0;
+                    int indexedVariables = 0;
+                    for (flash.tools.debugger.Variable subMember : suspensionCache.getMembers(swfSession, isolateId,
+                            memberValue)) {
+                        if (IndexedMembers.parseIndex(subMember.getName()) != -1) {
+                            indexedVariables++;
+                        } else {
+                            namedVariables++;
+                        }
                     }
+                    variable.indexedVariables = indexedVariables;
+                    variable.namedVariables = namedVariables;
                 }
-                variable.indexedVariables = indexedVariables;
-                variable.namedVariables = namedVariables;
             } else {
                 if (memberValue.getType() == VariableType.STRING) {
                     variable.value = "\"" + memberValue.getValueAsString() + "\"";
@@ -1762,91 +2696,31 @@ public class SWFDebugSession extends DebugSession {
                 presentationHint.attributes = attributes.toArray(new String[attributes.size()]);
             }
             variable.presentationHint = presentationHint;
-            if (requireIndexed) {
-                boolean inserted = false;
-                for (int i = 0; i < indexes.size(); i++) {
-                    int otherIndex = indexes.get(i);
-                    if (index < otherIndex) {
-                        indexes.add(i, index);
-                        result.add(i, variable);
-                        inserted = true;
-                        break;
-                    }
-                }
-                if (!inserted) {
-                    indexes.add(index);
-                    result.add(variable);
-                }
-            } else {
-                result.add(variable);
-            }
-        }
-    }
-
-    /**
-     * Frames don't have a global id, so we need to combine a value with the
-     * isolate/worker id to be able to figure out which one to reference.
-     */
-    private class IsolateAndFrame {
-        private static final int FRAME_MULTIPLIER = 100;
-        private static final int ISOLATE_MULTIPLIER = 1;
-
-        public IsolateAndFrame(int isolateAndFrameId) {
-            frameId = (int) (isolateAndFrameId / FRAME_MULTIPLIER);
-            isolateAndFrameId -= (frameId * FRAME_MULTIPLIER);
-            isolateId = (int) (isolateAndFrameId / ISOLATE_MULTIPLIER);
-        }
-
-        public IsolateAndFrame(int isolateId, int frameId) {
-            this.isolateId = isolateId;
-            this.frameId = frameId;
-        }
-
-        public int frameId;
-        public int isolateId;
-
-        public int toCombinedID() {
-            return (frameId * FRAME_MULTIPLIER) + (isolateId * ISOLATE_MULTIPLIER);
+            result.add(variable);
         }
     }
 
     /**
-     * Values from isolates cannot be accessed from the main session, so we need to
-     * encode the frame and isolate/worker id with the value id.
+     * Only arrays and vectors are expected to have enough indexed members to
+     * need paging.
      */
-    private class IsolateAndFrameOrValue {
-        private static final long VALUE_MULTIPLIER = 10000L;
-        private static final long FRAME_MULTIPLIER = 100L;
-        private static final long ISOLATE_MULTIPLIER = 1L;
-
-        public IsolateAndFrameOrValue(long variablesReference) {
-            valueId = variablesReference / VALUE_MULTIPLIER;
-            variablesReference -= valueId * VALUE_MULTIPLIER;
-            frameId = (int) (variablesReference / FRAME_MULTIPLIER);
-            variablesReference -= (frameId * FRAME_MULTIPLIER);
-            isolateId = (int) (variablesReference / ISOLATE_MULTIPLIER);
-        }
-
-        public IsolateAndFrameOrValue(int isolateId, int frameId, long valueId) {
-            this.isolateId = isolateId;
-            this.frameId = frameId;
-            this.valueId = valueId;
-        }
-
-        public int frameId;
-        public int isolateId;
-        public long valueId;
-
-        public long toVariablesReference() {
-            return (valueId * VALUE_MULTIPLIER) + (frameId * FRAME_MULTIPLIER) + (isolateId * ISOLATE_MULTIPLIER);
+    private static boolean mayHaveIndexedMembers(Value value) {
+        String typeName = value.getTypeName();
+        if (typeName == null) {
+            return false;
         }
+        return typeName.equals("Array") || typeName.startsWith("Array@") || typeName.startsWith("__AS3__.vec::Vector")
+                || typeName.startsWith("Vector.<");
     }
 
-    private flash.tools.debugger.Variable[] getVariablesForFrame(Frame swfFrame) {
+    private flash.tools.debugger.Variable[] getVariablesForFrame(int isolateId, int frameIndex, Frame swfFrame) {
         try {
-            flash.tools.debugger.Variable[] args = swfFrame.getArguments(swfSession);
-            flash.tools.debugger.Variable[] locals = swfFrame.getLocals(swfSession);
-            flash.tools.debugger.Variable swfThis = swfFrame.getThis(swfSession);
+            flash.tools.debugger.Variable[] args = suspensionCache.getArguments(swfSession, isolateId, frameIndex,
+                    swfFrame);
+            flash.tools.debugger.Variable[] locals = suspensionCache.getLocals(swfSession, isolateId, frameIndex,
+                    swfFrame);
+            flash.tools.debugger.Variable swfThis = suspensionCache.getThis(swfSession, isolateId, frameIndex,
+                    swfFrame);
             int memberCount = locals.length + args.length;
             int offset = 0;
             if (swfThis != null) {
@@ -1864,22 +2738,20 @@ public class SWFDebugSession extends DebugSession {
         }
     }
 
-    private flash.tools.debugger.Variable[] getVariables(IsolateAndFrameOrValue isolateAndFrameOrValue) {
+    private flash.tools.debugger.Variable[] getVariables(int isolateId, int frameIndex, long valueId) {
         try {
-            if (isolateAndFrameOrValue.valueId == LOCALS_VALUE_ID) {
-                Frame[] frames = getFramesForIsolate(isolateAndFrameOrValue.isolateId);
-                Frame frameWithLocals = frames[isolateAndFrameOrValue.frameId];
-                return getVariablesForFrame(frameWithLocals);
+            if (valueId == LOCALS_VALUE_ID) {
+                Frame[] frames = getFramesForIsolate(isolateId);
+                Frame frameWithLocals = frames[frameIndex];
+                return getVariablesForFrame(isolateId, frameIndex, frameWithLocals);
             }
             Value swfValue = null;
-            IsolateSession isolateSession = getIsolateSession(isolateAndFrameOrValue.isolateId);
-            if (isolateSession != null) {
-                swfValue = isolateSession.getValue(isolateAndFrameOrValue.valueId);
-            } else if (swfSession.isSuspended()) {
-                swfValue = swfSession.getValue(isolateAndFrameOrValue.valueId);
+            IsolateSession isolateSession = getIsolateSession(isolateId);
+            if (isolateSession != null || swfSession.isSuspended()) {
+                swfValue = suspensionCache.getValue(swfSession, isolateId, valueId);
             }
             if (swfValue != null) {
-                return swfValue.getMembers(swfSession);
+                return suspensionCache.getMembers(swfSession, isolateId, swfValue);
             }
         } catch (PlayerDebugException e) {
             return new flash.tools.debugger.Variable[0];
@@ -1887,9 +2759,35 @@ public class SWFDebugSession extends DebugSession {
         return new flash.tools.debugger.Variable[0];
     }
 
-    private flash.tools.debugger.Variable getMemberByName(IsolateAndFrameOrValue variablesReference, String name)
+    /**
+     * Returns one page of the indexed members of an Array or Vector.
+     */
+    private flash.tools.debugger.Variable[] getIndexedVariables(int isolateId, long valueId, Integer start,
+            Integer count) {
+        try {
+            if (valueId == LOCALS_VALUE_ID) {
+                return new flash.tools.debugger.Variable[0];
+            }
+            Value swfValue = null;
+            IsolateSession isolateSession = getIsolateSession(isolateId);
+            if (isolateSession != null || swfSession.isSuspended()) {
+                swfValue = suspensionCache.getValue(swfSession, isolateId, valueId);
+            }
+            if (swfValue != null) {
+                IndexedMembers indexedMembers = suspensionCache.getIndexedMembers(swfSession, isolateId, swfValue);
+                List<flash.tools.debugger.Variable> page = indexedMembers.getPage(start != null ? start : 0,
+                        count != null ? count : 0);
+                return page.toArray(new flash.tools.debugger.Variable[page.size()]);
+            }
+        } catch (PlayerDebugException e) {
+            return new flash.tools.debugger.Variable[0];
+        }
+        return new flash.tools.debugger.Variable[0];
+    }
+
+    private flash.tools.debugger.Variable getMemberByName(int isolateId, int frameIndex, long valueId, String name)
             throws PlayerDebugException {
-        flash.tools.debugger.Variable[] members = getVariables(variablesReference);
+        flash.tools.debugger.Variable[] members = getVariables(isolateId, frameIndex, valueId);
         if (members != null) {
             for (flash.tools.debugger.Variable member : members) {
                 if (member.getName().equals(name)) {
@@ -1901,10 +2799,19 @@ public class SWFDebugSession extends DebugSession {
     }
 
     public void setVariable(Response response, SetVariableRequest.SetVariableArguments arguments) {
-        IsolateAndFrameOrValue isolateAndFrameOrValue = new IsolateAndFrameOrValue(arguments.variablesReference);
+        long handle = arguments.variablesReference;
+        if (!handles.isValid(handle)) {
+            response.success = false;
+            response.message = "Must be paused to set variables";
+            sendResponse(response);
+            return;
+        }
+        int isolateId = handles.getIsolateId(handle);
+        int frameIndex = handles.getFrameIndex(handle);
+        long valueId = handles.getValueId(handle);
 
         try {
-            flash.tools.debugger.Variable member = getMemberByName(isolateAndFrameOrValue, arguments.name);
+            flash.tools.debugger.Variable member = getMemberByName(isolateId, frameIndex, valueId, arguments.name);
             if (member != null) {
                 Value memberValue = member.getValue();
                 FaultEvent faultEvent = null;
@@ -1933,20 +2840,22 @@ public class SWFDebugSession extends DebugSession {
                 } else {
                     setValue = false;
                 }
+                if (setValue) {
+                    // the cached members no longer have the current value
+                    invalidateSuspensionCache(isolateId);
+                }
                 setValue = setValue && faultEvent == null;
 
                 if (setValue) {
                     // need to get it again to access the new value
-                    member = getMemberByName(isolateAndFrameOrValue, arguments.name);
+                    member = getMemberByName(isolateId, frameIndex, valueId, arguments.name);
                     memberValue = member.getValue();
                     SetVariableResponseBody body = new SetVariableResponseBody();
                     body.type = memberValue.getTypeName();
                     long id = memberValue.getId();
                     if (id != Value.UNKNOWN_ID) {
-                        IsolateAndFrameOrValue memberIsolateAndFrameOrValue = new IsolateAndFrameOrValue(
-                                isolateAndFrameOrValue.isolateId, isolateAndFrameOrValue.frameId, memberValue.getId());
                         body.value = memberValue.getTypeName();
-                        body.variablesReference = memberIsolateAndFrameOrValue.toVariablesReference();
+                        body.variablesReference = Long.valueOf(handles.create(isolateId, frameIndex, id));
                     } else {
                         if (memberValue.getType() == VariableType.STRING) {
                             body.value = "\"" + memberValue.getValueAsString() + "\"";
@@ -1995,23 +2904,26 @@ public class SWFDebugSession extends DebugSession {
             return;
         }
 
-        IsolateAndFrameOrValue isolateAndFrameOrValue = null;
+        int isolateId = -1;
+        int frameIndex = -1;
         if (arguments.frameId != null) {
-            isolateAndFrameOrValue = new IsolateAndFrameOrValue(arguments.frameId);
+            if (handles.isValid(arguments.frameId)) {
+                isolateId = handles.getIsolateId(arguments.frameId);
+                frameIndex = handles.getFrameIndex(arguments.frameId);
+            }
         } else {
             try {
-                Frame[] swfFrames = swfSession.getFrames();
+                Frame[] swfFrames = getFramesForIsolate(Isolate.DEFAULT_ID);
                 if (swfFrames.length > 0) {
-                    int frameId = 0; // the first item is the current frame
-                    Frame frame = swfFrames[frameId];
-                    int isolateId = frame.getIsolateId();
-                    isolateAndFrameOrValue = new IsolateAndFrameOrValue(isolateId, frameId, 0);
+                    frameIndex = 0; // the first item is the current frame
+                    Frame frame = swfFrames[frameIndex];
+                    isolateId = frame.getIsolateId();
                 }
             } catch (Exception e) {
             }
         }
 
-        if (isolateAndFrameOrValue == null) {
+        if (frameIndex == -1) {
             response.success = false;
             response.message = "Paused at a location where expression evaluation is not supported";
             sendResponse(response);
@@ -2021,12 +2933,9 @@ public class SWFDebugSession extends DebugSession {
         Object evaluateResult = null;
         try {
             Frame swfFrame = null;
-            Integer frameId = isolateAndFrameOrValue.frameId;
-            if (frameId != null) {
-                Frame[] swfFrames = swfSession.getFrames();
-                if (frameId >= 0 && frameId < swfFrames.length) {
-                    swfFrame = swfFrames[frameId];
-                }
+            Frame[] swfFrames = getFramesForIsolate(isolateId);
+            if (frameIndex < swfFrames.length) {
+                swfFrame = swfFrames[frameIndex];
             }
 
             if (swfFrame == null) {
@@ -2039,7 +2948,8 @@ public class SWFDebugSession extends DebugSession {
             ASTBuilder builder = new ASTBuilder(false);
             ValueExp result = builder.parse(new StringReader(arguments.expression));
             evaluateResult = result
-                    .evaluate(new SWFExpressionContext(swfSession, swfFrame.getIsolateId(), swfFrame));
+                    .evaluate(new SWFExpressionContext(swfSession, swfFrame.getIsolateId(), swfFrame,
+                            suspensionCache, frameIndex));
         } catch (PlayerFaultException e) {
         } catch (NoSuchVariableException e) {
         } catch (IOException e) {
@@ -2067,10 +2977,8 @@ public class SWFDebugSession extends DebugSession {
         if (value != null) {
             long id = value.getId();
             if (id != Value.UNKNOWN_ID) {
-                IsolateAndFrameOrValue evaluatedIsolateAndFrameOrValue = new IsolateAndFrameOrValue(
-                        isolateAndFrameOrValue.isolateId, isolateAndFrameOrValue.frameId, value.getId());
                 body.result = value.getTypeName();
-                body.variablesReference = evaluatedIsolateAndFrameOrValue.toVariablesReference();
+                body.variablesReference = Long.valueOf(handles.create(isolateId, frameIndex, id));
                 body.type = value.getTypeName();
             } else {
                 if (value.getType() == VariableType.STRING) {
@@ -2115,21 +3023,67 @@ public class SWFDebugSession extends DebugSession {
         }
 
         String typeName = null;
+        String breakMode = ExceptionInfoResponseBody.EXCEPTION_BREAK_MODE_ALWAYS;
         if (faultEvent instanceof ExceptionFault) {
             ExceptionFault exceptionFault = (ExceptionFault) faultEvent;
             Value thrownValue = exceptionFault.getThrownValue();
             typeName = thrownValue.getTypeName();
+            if (!exceptionFault.willExceptionBeCaught()) {
+                breakMode = ExceptionInfoResponseBody.EXCEPTION_BREAK_MODE_UNHANDLED;
+            }
         }
 
         ExceptionDetails details = new ExceptionDetails();
         details.message = faultEvent.information;
         details.stackTrace = faultEvent.stackTrace();
         details.typeName = typeName;
-        sendResponse(response, new ExceptionInfoResponseBody(null,
-                ExceptionInfoResponseBody.EXCEPTION_BREAK_MODE_ALWAYS, faultEvent.information, details));
+        sendResponse(response,
+                new ExceptionInfoResponseBody(null, breakMode, faultEvent.information, details));
+    }
+
+    /**
+     * Wakes up the session runner, if it is waiting for something to happen.
+     * Requests that resume, step, or pause a runtime should call this because
+     * the result doesn't necessarily queue a debugger event.
+     */
+    private void signalRunner() {
+        synchronized (runnerMonitor) {
+            runnerSignalCount++;
+            runnerMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Values fetched while suspended may change as soon as the runtime
+     * resumes or steps.
+     */
+    private void invalidateSuspensionCache(int isolateId) {
+        if (TRACE) {
+            System.err.print(String.format("\r\n\r\n*****C suspension cache for isolate %1$d: %2$d hits, %3$d misses",
+                    isolateId, suspensionCache.getHitCount(), suspensionCache.getMissCount()));
+        }
+        suspensionCache.invalidate(isolateId);
+    }
+
+    /**
+     * Resumes an isolate that suspended without stopping in the editor, like
+     * after loading a script or hitting a logpoint. The caches are
+     * invalidated after the runtime resumes, so that a value that is still
+     * being fetched can't be added to the new cache.
+     */
+    private void resumeWithoutStopping(int isolateId)
+            throws NotConnectedException, NoResponseException, NotSuspendedException {
+        if (isolateId == Isolate.DEFAULT_ID) {
+            swfSession.resume();
+        } else {
+            swfSession.getWorkerSession(isolateId).resume();
+        }
+        invalidateSuspensionCache(isolateId);
+        invalidateHandles(isolateId);
     }
 
     private void stopWaitingForResume(int isolateId) {
+        invalidateSuspensionCache(isolateId);
         if (isolateId == Isolate.DEFAULT_ID) {
             waitingForResume = false;
             // previousFaultEvent = null;
@@ -2142,6 +3096,26 @@ public class SWFDebugSession extends DebugSession {
                 }
             }
         }
+        invalidateHandles(isolateId);
+        signalRunner();
+    }
+
+    /**
+     * The editor discards its frames and variables when a thread continues,
+     * so the handles for them are no longer needed.
+     */
+    private void invalidateHandles(int isolateId) {
+        handles.invalidate(isolateId);
+        if (waitingForResume) {
+            return;
+        }
+        for (IsolateWithState isolateWithState : isolates) {
+            if (isolateWithState.waitingForResume) {
+                return;
+            }
+        }
+        // nothing is suspended, so all of the records may be discarded
+        handles.clear();
     }
 
     private boolean isAdobeAIRDescriptorArchitecture64Bit(String descriptorContents) {
@@ -2191,26 +3165,4 @@ public class SWFDebugSession extends DebugSession {
         source.path = transformPath(sourceFile.getFullPath());
         return source;
     }
-
-    protected Gson createGson() {
-        GsonBuilder builder = new GsonBuilder();
-        return builder.registerTypeAdapter(Request.class, new DebugSession.RequestDeserializer())
-                .registerTypeAdapter(LaunchRequest.LaunchRequestArguments.class, new SWFLaunchRequestDeserializer())
-                .registerTypeAdapter(AttachRequest.AttachRequestArguments.class, new SWFAttachRequestDeserializer())
-                .create();
-    }
-
-    public static class SWFLaunchRequestDeserializer implements JsonDeserializer<LaunchRequest.LaunchRequestArguments> {
-        public LaunchRequest.LaunchRequestArguments deserialize(JsonElement je, Type type,
-                JsonDeserializationContext jdc) throws JsonParseException {
-            return gson.fromJson(je, SWFLaunchRequestArguments.class);
-        }
-    }
-
-    public static class SWFAttachRequestDeserializer implements JsonDeserializer<AttachRequest.AttachRequestArguments> {
-        public AttachRequest.AttachRequestArguments deserialize(JsonElement je, Type type,
-                JsonDeserializationContext jdc) throws JsonParseException {
-            return gson.fromJson(je, SWFAttachRequestArguments.class);
-        }
-    }
 }
@@ -31,14 +31,67 @@ import flash.tools.debugger.expression.PlayerFaultException;
 
 public class SWFExpressionContext implements Context {
 	public SWFExpressionContext(Session session, int isolateId, Object frameOrVariable) {
+		this(session, isolateId, frameOrVariable, null, -1);
+	}
+
+	/**
+	 * If a cache is specified, the variables and members of the frame are
+	 * fetched from the cache. The frame index is part of the cache key.
+	 */
+	public SWFExpressionContext(Session session, int isolateId, Object frameOrVariable, SuspensionCache cache,
+			int frameIndex) {
 		this.swfSession = session;
 		this.isolateId = isolateId;
 		this.frameOrVariable = frameOrVariable;
+		this.cache = cache;
+		this.frameIndex = frameIndex;
 	}
 
 	private Session swfSession;
 	private Object frameOrVariable;
 	private int isolateId;
+	private SuspensionCache cache;
+	private int frameIndex;
+
+	private Variable getThis(Frame frame)
+			throws NotSuspendedException, NoResponseException, NotConnectedException {
+		if (cache != null) {
+			return cache.getThis(swfSession, isolateId, frameIndex, frame);
+		}
+		return frame.getThis(swfSession);
+	}
+
+	private Variable[] getArguments(Frame frame)
+			throws NotSuspendedException, NoResponseException, NotConnectedException {
+		if (cache != null) {
+			return cache.getArguments(swfSession, isolateId, frameIndex, frame);
+		}
+		return frame.getArguments(swfSession);
+	}
+
+	private Variable[] getLocals(Frame frame)
+			throws NotSuspendedException, NoResponseException, NotConnectedException {
+		if (cache != null) {
+			return cache.getLocals(swfSession, isolateId, frameIndex, frame);
+		}
+		return frame.getLocals(swfSession);
+	}
+
+	private Variable[] getScopeChain(Frame frame)
+			throws NotSuspendedException, NoResponseException, NotConnectedException {
+		if (cache != null) {
+			return cache.getScopeChain(swfSession, isolateId, frameIndex, frame);
+		}
+		return frame.getScopeChain(swfSession);
+	}
+
+	private Variable[] getMembers(Value value)
+			throws NotSuspendedException, NoResponseException, NotConnectedException {
+		if (cache != null) {
+			return cache.getMembers(swfSession, isolateId, value);
+		}
+		return value.getMembers(swfSession);
+	}
 
 	public Object lookup(Object o) throws NoSuchVariableException {
 		if (o instanceof Variable) {
@@ -55,31 +108,31 @@ public class SWFExpressionContext implements Context {
 			if (frameOrVariable instanceof Frame) {
 				Frame contextFrame = (Frame) frameOrVariable;
 				if (memberName.equals(IASKeywordConstants.THIS)) {
-					return contextFrame.getThis(swfSession);
+					return getThis(contextFrame);
 				}
-				Variable[] args = contextFrame.getArguments(swfSession);
+				Variable[] args = getArguments(contextFrame);
 				for (Variable argVar : args) {
 					if (argVar.getName().equals(memberName)) {
 						return argVar;
 					}
 				}
-				Variable[] locals = contextFrame.getLocals(swfSession);
+				Variable[] locals = getLocals(contextFrame);
 				for (Variable localVar : locals) {
 					if (localVar.getName().equals(memberName)) {
 						return localVar;
 					}
 				}
-				Variable thisVar = contextFrame.getThis(swfSession);
+				Variable thisVar = getThis(contextFrame);
 				if (thisVar != null) {
 					Object member = lookupMember(thisVar, memberName);
 					if (member != null) {
 						return member;
 					}
 				}
-				Variable[] scopes = contextFrame.getScopeChain(swfSession);
+				Variable[] scopes = getScopeChain(contextFrame);
 				for (Variable scope : scopes) {
 					Value scopeValue = scope.getValue();
-					Variable[] members = scopeValue.getMembers(swfSession);
+					Variable[] members = getMembers(scopeValue);
 					if (members != null) {
 						for (Variable member : members) {
 							if (member.getName().equals(memberName)) {
@@ -113,7 +166,7 @@ public class SWFExpressionContext implements Context {
 		}
 		Variable[] members = null;
 		try {
-			members = context.getValue().getMembers(swfSession);
+			members = getMembers(context.getValue());
 		} catch (Exception e) {
 			return null;
 		}
@@ -135,7 +188,7 @@ public class SWFExpressionContext implements Context {
 		Variable variable = (Variable) lookupResult;
 		Variable[] members = null;
 		try {
-			members = variable.getValue().getMembers(swfSession);
+			members = getMembers(variable.getValue());
 		} catch (Exception e) {
 			throw new NoSuchVariableException(o);
 		}
@@ -149,7 +202,7 @@ public class SWFExpressionContext implements Context {
 		} catch (NoSuchVariableException e) {
 			return null;
 		}
-		return new SWFExpressionContext(swfSession, isolateId, lookupResult);
+		return new SWFExpressionContext(swfSession, isolateId, lookupResult, cache, frameIndex);
 	}
 
 	public void assign(Object o, Value v) throws NoSuchVariableException, PlayerFaultException {
@@ -169,6 +222,10 @@ public class SWFExpressionContext implements Context {
 		}
 		try {
 			variable.setValue(swfSession, v.getType(), v.getValueAsString());
+			if (cache != null) {
+				// anything that was cached may be affected by the assignment
+				cache.invalidate(isolateId);
+			}
 		} catch (NotConnectedException e) {
 			return;
 		} catch (NoResponseException e) {
@@ -193,7 +250,7 @@ public class SWFExpressionContext implements Context {
 			Frame frame = (Frame) o;
 			Value frameValue = null;
 			try {
-				frameValue = frame.getThis(swfSession).getValue();
+				frameValue = getThis(frame).getValue();
 			} catch (NotConnectedException e) {
 				return null;
 			} catch (NoResponseException e) {
@@ -32,4 +32,8 @@ public class SWFLaunchRequestArguments extends LaunchRequest.LaunchRequestArgume
     public String extdir;
     public String rootDirectory;
     public Map<String, String> env;
+    public Integer traceOutputBatchSize;
+    public Integer traceOutputBatchDelay;
+    public Integer traceOutputRateLimit;
+    public Integer traceOutputTailLines;
 }
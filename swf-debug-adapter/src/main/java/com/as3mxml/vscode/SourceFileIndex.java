@@ -0,0 +1,176 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import flash.tools.debugger.InProgressException;
+import flash.tools.debugger.Session;
+import flash.tools.debugger.SourceFile;
+import flash.tools.debugger.SwfInfo;
+
+/**
+ * Maps the paths of source files to the SourceFile objects loaded by the
+ * SWFs in a single isolate. SWFs are added as their processing completes,
+ * and removed when they are unloaded, so that finding the source files for a
+ * path doesn't require walking the source list of every SWF.
+ */
+public class SourceFileIndex {
+    private Map<Path, List<SourceFile>> sourceFilesByPath = new HashMap<>();
+    private Map<SwfInfo, SourceFile[]> sourceFilesBySwf = new HashMap<>();
+    private Map<SwfInfo, FunctionNameIndex> functionNameIndexes = new HashMap<>();
+    private Map<SourceFile, BitSet> executableLinesBySourceFile = new HashMap<>();
+
+    /**
+     * Converts a path to the form used as a key in the index, or returns null
+     * if the path is not valid on this file system. The keys are Path objects
+     * because file systems may not be case sensitive.
+     */
+    public static Path toKey(String path) {
+        try {
+            return Paths.get(path).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the source files of any SWFs that have not been indexed yet.
+     * SWF is a streaming format, so the source list of a SWF may not be
+     * available until later. Returns the source files that were added.
+     */
+    public synchronized List<SourceFile> update(Session session, SwfInfo[] swfs) {
+        List<SourceFile> result = new ArrayList<>();
+        for (SwfInfo swf : swfs) {
+            if (swf == null) {
+                // for some reason, the array may contain null values (vscode-swf-debug#25)
+                continue;
+            }
+            if (swf.isUnloaded() || sourceFilesBySwf.containsKey(swf)) {
+                continue;
+            }
+            SourceFile[] sourceFiles = null;
+            try {
+                sourceFiles = swf.getSourceList(session);
+            } catch (InProgressException e) {
+                // try again on the next update
+                continue;
+            }
+            sourceFilesBySwf.put(swf, sourceFiles);
+            for (SourceFile sourceFile : sourceFiles) {
+                Path key = toKey(sourceFile.getFullPath());
+                if (key == null) {
+                    continue;
+                }
+                List<SourceFile> sourceFilesForPath = sourceFilesByPath.get(key);
+                if (sourceFilesForPath == null) {
+                    // using MXML may create more than one source file with the same path
+                    sourceFilesForPath = new ArrayList<>(1);
+                    sourceFilesByPath.put(key, sourceFilesForPath);
+                }
+                sourceFilesForPath.add(sourceFile);
+                result.add(sourceFile);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the source files of any SWFs that have been unloaded.
+     */
+    public synchronized void prune() {
+        Iterator<Map.Entry<SwfInfo, SourceFile[]>> iterator = sourceFilesBySwf.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<SwfInfo, SourceFile[]> entry = iterator.next();
+            if (!entry.getKey().isUnloaded()) {
+                continue;
+            }
+            iterator.remove();
+            functionNameIndexes.remove(entry.getKey());
+            for (SourceFile sourceFile : entry.getValue()) {
+                executableLinesBySourceFile.remove(sourceFile);
+                Path key = toKey(sourceFile.getFullPath());
+                if (key == null) {
+                    continue;
+                }
+                List<SourceFile> sourceFilesForPath = sourceFilesByPath.get(key);
+                if (sourceFilesForPath == null) {
+                    continue;
+                }
+                sourceFilesForPath.remove(sourceFile);
+                if (sourceFilesForPath.isEmpty()) {
+                    sourceFilesByPath.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds functions by name in all SWFs. The function names of a SWF are
+     * not indexed until the first time that this method is called after the
+     * SWF is loaded.
+     */
+    public synchronized List<FunctionNameIndex.FunctionLocation> findFunctions(Session session, String name) {
+        List<FunctionNameIndex.FunctionLocation> result = new ArrayList<>();
+        for (Map.Entry<SwfInfo, SourceFile[]> entry : sourceFilesBySwf.entrySet()) {
+            SwfInfo swf = entry.getKey();
+            FunctionNameIndex functionNameIndex = functionNameIndexes.get(swf);
+            if (functionNameIndex == null) {
+                functionNameIndex = new FunctionNameIndex(session, entry.getValue());
+                functionNameIndexes.put(swf, functionNameIndex);
+            }
+            result.addAll(functionNameIndex.find(name));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the lines of a source file that have bytecode, and may have
+     * breakpoints. The lines are found the first time that they are needed,
+     * and cached until the SWF is unloaded.
+     */
+    public synchronized BitSet getExecutableLines(SourceFile sourceFile) {
+        BitSet lines = executableLinesBySourceFile.get(sourceFile);
+        if (lines == null) {
+            int lineCount = sourceFile.getLineCount();
+            lines = new BitSet(lineCount + 1);
+            for (int i = 1; i <= lineCount; i++) {
+                if (sourceFile.getOffsetForLine(i) > 0) {
+                    lines.set(i);
+                }
+            }
+            executableLinesBySourceFile.put(sourceFile, lines);
+        }
+        return lines;
+    }
+
+    public synchronized List<SourceFile> getSourceFiles(Path key) {
+        List<SourceFile> sourceFiles = sourceFilesByPath.get(key);
+        if (sourceFiles == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(sourceFiles);
+    }
+}
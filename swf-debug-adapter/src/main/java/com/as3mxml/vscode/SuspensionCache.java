@@ -0,0 +1,261 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Isolate;
+import flash.tools.debugger.NoResponseException;
+import flash.tools.debugger.NotConnectedException;
+import flash.tools.debugger.NotSuspendedException;
+import flash.tools.debugger.Session;
+import flash.tools.debugger.Value;
+import flash.tools.debugger.Variable;
+
+/**
+ * Caches the stack frames, values, members, and frame variables fetched from
+ * the runtime while an isolate is suspended. Nothing can change while the
+ * isolate is suspended, except by the debugger, so each value needs to be
+ * fetched only once per stop. The cache for an isolate must be invalidated
+ * when it resumes or steps, or when the debugger changes a value.
+ */
+public class SuspensionCache {
+    private static class FrameVariables {
+        public boolean hasThis = false;
+        public Variable thisVariable;
+        public Variable[] arguments;
+        public Variable[] locals;
+        public Variable[] scopeChain;
+    }
+
+    private static class IsolateCache {
+        public volatile Frame[] frames;
+        public Map<Long, Value> values = new ConcurrentHashMap<>();
+        public Map<Long, Variable[]> members = new ConcurrentHashMap<>();
+        public Map<Long, IndexedMembers> indexedMembers = new ConcurrentHashMap<>();
+        public Map<Integer, FrameVariables> frameVariables = new ConcurrentHashMap<>();
+    }
+
+    private Map<Integer, IsolateCache> isolates = new ConcurrentHashMap<>();
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+
+    private IsolateCache getIsolateCache(int isolateId) {
+        return isolates.computeIfAbsent(isolateId, (key) -> new IsolateCache());
+    }
+
+    private FrameVariables getFrameVariables(int isolateId, int frameIndex) {
+        return getIsolateCache(isolateId).frameVariables.computeIfAbsent(frameIndex, (key) -> new FrameVariables());
+    }
+
+    /**
+     * Nothing is cached for an isolate that isn't suspended, because its
+     * values may change at any time. This is checked before fetching, so that
+     * anything fetched before a resume is stored in the cache that is
+     * discarded when the isolate resumes.
+     */
+    private static boolean isSuspended(Session session, int isolateId) throws NotConnectedException {
+        if (isolateId == Isolate.DEFAULT_ID) {
+            return session.isSuspended();
+        }
+        return session.getWorkerSession(isolateId).isSuspended();
+    }
+
+    /**
+     * Returns a snapshot of the stack frames of an isolate. The frames are
+     * not cached if the isolate is not suspended because they're expected to
+     * be empty.
+     */
+    public Frame[] getFrames(Session session, int isolateId) throws NotConnectedException {
+        // every resume invalidates the cache after the runtime has resumed.
+        // if that happens while the frames are being fetched, they're stored
+        // in the discarded cache. if the fetch starts after the resume, the
+        // isolate is no longer suspended, and they're not stored at all.
+        IsolateCache isolateCache = getIsolateCache(isolateId);
+        Frame[] frames = isolateCache.frames;
+        if (frames != null) {
+            hitCount.incrementAndGet();
+            return frames;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        if (isolateId == Isolate.DEFAULT_ID) {
+            frames = session.getFrames();
+        } else {
+            frames = session.getWorkerSession(isolateId).getFrames();
+        }
+        if (suspended && frames != null) {
+            isolateCache.frames = frames;
+        }
+        return frames;
+    }
+
+    public Value getValue(Session session, int isolateId, long valueId)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        IsolateCache isolateCache = getIsolateCache(isolateId);
+        Value value = isolateCache.values.get(valueId);
+        if (value != null) {
+            hitCount.incrementAndGet();
+            return value;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        if (isolateId == Isolate.DEFAULT_ID) {
+            value = session.getValue(valueId);
+        } else {
+            value = session.getWorkerSession(isolateId).getValue(valueId);
+        }
+        if (suspended && value != null) {
+            isolateCache.values.put(valueId, value);
+        }
+        return value;
+    }
+
+    public Variable[] getMembers(Session session, int isolateId, Value value)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        long valueId = value.getId();
+        if (valueId == Value.UNKNOWN_ID) {
+            // primitives don't have an id to use as the key
+            return value.getMembers(session);
+        }
+        IsolateCache isolateCache = getIsolateCache(isolateId);
+        Variable[] members = isolateCache.members.get(valueId);
+        if (members != null) {
+            hitCount.incrementAndGet();
+            return members;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        members = value.getMembers(session);
+        if (suspended && members != null) {
+            isolateCache.members.put(valueId, members);
+        }
+        return members;
+    }
+
+    /**
+     * Returns the members of an Array or Vector that have numeric names,
+     * sorted by index. The members are fetched and sorted once per stop, so
+     * each page that is requested after the first one is cheap.
+     */
+    public IndexedMembers getIndexedMembers(Session session, int isolateId, Value value)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        long valueId = value.getId();
+        IsolateCache isolateCache = getIsolateCache(isolateId);
+        IndexedMembers result = isolateCache.indexedMembers.get(valueId);
+        if (result != null) {
+            hitCount.incrementAndGet();
+            return result;
+        }
+        boolean suspended = isSuspended(session, isolateId);
+        Variable[] members = getMembers(session, isolateId, value);
+        result = new IndexedMembers(members != null ? members : new Variable[0]);
+        if (suspended && valueId != Value.UNKNOWN_ID) {
+            isolateCache.indexedMembers.put(valueId, result);
+        }
+        return result;
+    }
+
+    public Variable getThis(Session session, int isolateId, int frameIndex, Frame frame)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        FrameVariables frameVariables = getFrameVariables(isolateId, frameIndex);
+        if (frameVariables.hasThis) {
+            hitCount.incrementAndGet();
+            return frameVariables.thisVariable;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        Variable thisVariable = frame.getThis(session);
+        if (suspended) {
+            frameVariables.thisVariable = thisVariable;
+            frameVariables.hasThis = true;
+        }
+        return thisVariable;
+    }
+
+    public Variable[] getArguments(Session session, int isolateId, int frameIndex, Frame frame)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        FrameVariables frameVariables = getFrameVariables(isolateId, frameIndex);
+        if (frameVariables.arguments != null) {
+            hitCount.incrementAndGet();
+            return frameVariables.arguments;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        Variable[] frameArguments = frame.getArguments(session);
+        if (suspended) {
+            frameVariables.arguments = frameArguments;
+        }
+        return frameArguments;
+    }
+
+    public Variable[] getLocals(Session session, int isolateId, int frameIndex, Frame frame)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        FrameVariables frameVariables = getFrameVariables(isolateId, frameIndex);
+        if (frameVariables.locals != null) {
+            hitCount.incrementAndGet();
+            return frameVariables.locals;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        Variable[] locals = frame.getLocals(session);
+        if (suspended) {
+            frameVariables.locals = locals;
+        }
+        return locals;
+    }
+
+    public Variable[] getScopeChain(Session session, int isolateId, int frameIndex, Frame frame)
+            throws NotSuspendedException, NoResponseException, NotConnectedException {
+        FrameVariables frameVariables = getFrameVariables(isolateId, frameIndex);
+        if (frameVariables.scopeChain != null) {
+            hitCount.incrementAndGet();
+            return frameVariables.scopeChain;
+        }
+        missCount.incrementAndGet();
+        boolean suspended = isSuspended(session, isolateId);
+        Variable[] scopeChain = frame.getScopeChain(session);
+        if (suspended) {
+            frameVariables.scopeChain = scopeChain;
+        }
+        return scopeChain;
+    }
+
+    /**
+     * Discards everything cached for an isolate.
+     */
+    public void invalidate(int isolateId) {
+        isolates.remove(isolateId);
+    }
+
+    /**
+     * Discards everything cached for all isolates.
+     */
+    public void invalidateAll() {
+        isolates.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -17,20 +17,13 @@ package com.as3mxml.vscode.debug;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.lang.reflect.Type;
 import java.util.HashMap;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
 import com.as3mxml.vscode.debug.protocol.ProtocolServer;
 import com.as3mxml.vscode.debug.protocol.Request;
 import com.as3mxml.vscode.debug.protocol.Response;
 import com.as3mxml.vscode.debug.requests.AttachRequest;
+import com.as3mxml.vscode.debug.requests.BreakpointLocationsRequest;
 import com.as3mxml.vscode.debug.requests.ConfigurationDoneRequest;
 import com.as3mxml.vscode.debug.requests.ContinueRequest;
 import com.as3mxml.vscode.debug.requests.EvaluateRequest;
@@ -41,6 +34,8 @@ import com.as3mxml.vscode.debug.requests.NextRequest;
 import com.as3mxml.vscode.debug.requests.PauseRequest;
 import com.as3mxml.vscode.debug.requests.ScopesRequest;
 import com.as3mxml.vscode.debug.requests.SetBreakpointsRequest;
+import com.as3mxml.vscode.debug.requests.SetExceptionBreakpointsRequest;
+import com.as3mxml.vscode.debug.requests.SetFunctionBreakpointsRequest;
 import com.as3mxml.vscode.debug.requests.SetVariableRequest;
 import com.as3mxml.vscode.debug.requests.StackTraceRequest;
 import com.as3mxml.vscode.debug.requests.StepInRequest;
@@ -55,6 +50,31 @@ public abstract class DebugSession extends ProtocolServer {
 
     public DebugSession(boolean debuggerLinesStartAt1) {
         _debuggerLinesStartAt1 = debuggerLinesStartAt1;
+        registerRequestArguments(InitializeRequest.REQUEST_COMMAND, InitializeRequest.InitializeRequestArguments.class);
+        registerRequestArguments(SetBreakpointsRequest.REQUEST_COMMAND,
+                SetBreakpointsRequest.SetBreakpointsArguments.class);
+        registerRequestArguments(SetExceptionBreakpointsRequest.REQUEST_COMMAND,
+                SetExceptionBreakpointsRequest.SetExceptionBreakpointsArguments.class);
+        registerRequestArguments(SetFunctionBreakpointsRequest.REQUEST_COMMAND,
+                SetFunctionBreakpointsRequest.SetFunctionBreakpointsArguments.class);
+        registerRequestArguments(BreakpointLocationsRequest.REQUEST_COMMAND,
+                BreakpointLocationsRequest.BreakpointLocationsArguments.class);
+        registerRequestArguments(LaunchRequest.REQUEST_COMMAND, LaunchRequest.LaunchRequestArguments.class);
+        registerRequestArguments(AttachRequest.REQUEST_COMMAND, AttachRequest.AttachRequestArguments.class);
+        registerRequestArguments(ConfigurationDoneRequest.REQUEST_COMMAND,
+                ConfigurationDoneRequest.ConfigurationDoneArguments.class);
+        registerRequestArguments(StackTraceRequest.REQUEST_COMMAND, StackTraceRequest.StackTraceArguments.class);
+        registerRequestArguments(ScopesRequest.REQUEST_COMMAND, ScopesRequest.ScopesArguments.class);
+        registerRequestArguments(VariablesRequest.REQUEST_COMMAND, VariablesRequest.VariablesArguments.class);
+        registerRequestArguments(EvaluateRequest.REQUEST_COMMAND, EvaluateRequest.EvaluateArguments.class);
+        registerRequestArguments(ExceptionInfoRequest.REQUEST_COMMAND,
+                ExceptionInfoRequest.ExceptionInfoArguments.class);
+        registerRequestArguments(PauseRequest.REQUEST_COMMAND, PauseRequest.PauseArguments.class);
+        registerRequestArguments(ContinueRequest.REQUEST_COMMAND, ContinueRequest.ContinueArguments.class);
+        registerRequestArguments(NextRequest.REQUEST_COMMAND, NextRequest.NextArguments.class);
+        registerRequestArguments(StepInRequest.REQUEST_COMMAND, StepInRequest.StepInArguments.class);
+        registerRequestArguments(StepOutRequest.REQUEST_COMMAND, StepOutRequest.StepOutArguments.class);
+        registerRequestArguments(SetVariableRequest.REQUEST_COMMAND, SetVariableRequest.SetVariableArguments.class);
     }
 
     public void sendResponse(Response response) {
@@ -160,8 +180,18 @@ public abstract class DebugSession extends ProtocolServer {
                     setBreakpoints(response, (SetBreakpointsRequest.SetBreakpointsArguments) arguments);
                     break;
                 }
-                case "setExceptionBreakpoints": {
-                    setExceptionBreakpoints(response, arguments);
+                case SetFunctionBreakpointsRequest.REQUEST_COMMAND: {
+                    setFunctionBreakpoints(response,
+                            (SetFunctionBreakpointsRequest.SetFunctionBreakpointsArguments) arguments);
+                    break;
+                }
+                case BreakpointLocationsRequest.REQUEST_COMMAND: {
+                    breakpointLocations(response, (BreakpointLocationsRequest.BreakpointLocationsArguments) arguments);
+                    break;
+                }
+                case SetExceptionBreakpointsRequest.REQUEST_COMMAND: {
+                    setExceptionBreakpoints(response,
+                            (SetExceptionBreakpointsRequest.SetExceptionBreakpointsArguments) arguments);
                     break;
                 }
                 case EvaluateRequest.REQUEST_COMMAND: {
@@ -218,7 +248,14 @@ public abstract class DebugSession extends ProtocolServer {
 
     public abstract void setBreakpoints(Response response, SetBreakpointsRequest.SetBreakpointsArguments arguments);
 
-    public abstract void setExceptionBreakpoints(Response response, Request.RequestArguments arguments);
+    public abstract void setFunctionBreakpoints(Response response,
+            SetFunctionBreakpointsRequest.SetFunctionBreakpointsArguments arguments);
+
+    public abstract void breakpointLocations(Response response,
+            BreakpointLocationsRequest.BreakpointLocationsArguments arguments);
+
+    public abstract void setExceptionBreakpoints(Response response,
+            SetExceptionBreakpointsRequest.SetExceptionBreakpointsArguments arguments);
 
     public abstract void continueCommand(Response response, ContinueRequest.ContinueArguments arguments);
 
@@ -339,68 +376,4 @@ public abstract class DebugSession extends ProtocolServer {
      * }
      * }
      */
-
-    protected Gson createGson() {
-        GsonBuilder builder = new GsonBuilder();
-        return builder.registerTypeAdapter(Request.class, new RequestDeserializer()).create();
-    }
-
-    public static class RequestDeserializer implements JsonDeserializer<Request> {
-        public Request deserialize(JsonElement je, Type type, JsonDeserializationContext jdc)
-                throws JsonParseException {
-            JsonObject jo = je.getAsJsonObject();
-            switch (jo.get("command").getAsString()) {
-                case InitializeRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, InitializeRequest.class);
-                }
-                case SetBreakpointsRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, SetBreakpointsRequest.class);
-                }
-                case LaunchRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, LaunchRequest.class);
-                }
-                case AttachRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, AttachRequest.class);
-                }
-                case ConfigurationDoneRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, ConfigurationDoneRequest.class);
-                }
-                case StackTraceRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, StackTraceRequest.class);
-                }
-                case ScopesRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, ScopesRequest.class);
-                }
-                case VariablesRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, VariablesRequest.class);
-                }
-                case EvaluateRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, EvaluateRequest.class);
-                }
-                case ExceptionInfoRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, ExceptionInfoRequest.class);
-                }
-                case PauseRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, PauseRequest.class);
-                }
-                case ContinueRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, ContinueRequest.class);
-                }
-                case NextRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, NextRequest.class);
-                }
-                case StepInRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, StepInRequest.class);
-                }
-                case StepOutRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, StepOutRequest.class);
-                }
-                case SetVariableRequest.REQUEST_COMMAND: {
-                    return gson.fromJson(je, SetVariableRequest.class);
-                }
-            }
-            Gson newGson = new Gson();
-            return newGson.fromJson(je, Request.class);
-        }
-    }
 }
\ No newline at end of file
@@ -24,7 +24,7 @@ public class ExitedEvent extends Event<ExitedEvent.ExitedBody> {
         super(EVENT_TYPE, body);
     }
 
-    public class ExitedBody extends Event.EventBody {
+    public static class ExitedBody extends Event.EventBody {
         public int exitCode;
     }
 }
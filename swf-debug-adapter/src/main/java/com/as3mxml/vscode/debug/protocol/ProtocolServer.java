@@ -15,18 +15,34 @@ limitations under the License.
 */
 package com.as3mxml.vscode.debug.protocol;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Field;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.as3mxml.vscode.debug.requests.InitializeRequest;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.as3mxml.vscode.debug.utils.ThreadUtils;
 
 public abstract class ProtocolServer {
     public boolean TRACE;
@@ -34,34 +50,61 @@ public abstract class ProtocolServer {
 
     protected static final int BUFFER_SIZE = 4096;
     protected static final String TWO_CRLF = "\r\n\r\n";
+    private static final byte[] TWO_CRLF_BYTES = TWO_CRLF.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_LENGTH_BYTES = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+    // enough room for the Content-Length header with the largest int
+    private static final int HEADER_RESERVE = CONTENT_LENGTH_BYTES.length + 10 + TWO_CRLF_BYTES.length;
+    private static final int MAX_POOLED_MESSAGE_SIZE = 1024 * 1024;
     protected static final Charset ENCODING = StandardCharsets.UTF_8;
 
     private OutputStream _outputStream;
     private Pattern contentLengthPattern = Pattern.compile("^Content-Length: (\\d+)");
     private ByteBuffer _rawData;
     private int _bodyLength;
-    private int _sequenceNumber;
-    protected static Gson gson;
-    private boolean _stopRequested;
+    private int _headerScanOffset;
+    private AtomicInteger _sequenceNumber;
+    private Queue<ProtocolMessage> _outgoingMessages;
+    private volatile java.lang.Thread _writerThread;
+    private volatile boolean _writerStopRequested;
+    private volatile boolean _outputClosed;
+    private MessageBuffer _messageBuffer;
+    private JsonWriter _messageJsonWriter;
+    private ThreadFactory _threadFactory = ThreadUtils.PLATFORM_THREAD_FACTORY;
+    protected Gson gson;
+    private volatile boolean _stopRequested;
+    private Map<String, TypeAdapter<? extends Request.RequestArguments>> _argumentsAdapters = new HashMap<>();
 
     public ProtocolServer() {
         gson = createGson();
-        _sequenceNumber = 1;
+        _sequenceNumber = new AtomicInteger(1);
+        _outgoingMessages = new ConcurrentLinkedQueue<>();
+        _messageBuffer = new MessageBuffer();
+        _messageJsonWriter = createMessageJsonWriter();
         _bodyLength = -1;
+        _headerScanOffset = 0;
         _rawData = new ByteBuffer();
     }
 
+    private JsonWriter createMessageJsonWriter() {
+        JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(_messageBuffer, ENCODING));
+        // the same writer is reused for every message, and each one is a new
+        // top-level value
+        jsonWriter.setLenient(true);
+        return jsonWriter;
+    }
+
     protected Gson createGson() {
         GsonBuilder builder = new GsonBuilder();
         return builder.create();
     }
 
     public void start(InputStream inputStream, OutputStream outputStream) {
-        _outputStream = outputStream;
+        _outputStream = new BufferedOutputStream(outputStream, BUFFER_SIZE * 4);
+        _stopRequested = false;
+        startWriter();
 
         byte[] buffer = new byte[BUFFER_SIZE];
 
-        _stopRequested = false;
         while (!_stopRequested) {
             int read = 0;
             try {
@@ -71,8 +114,8 @@ public abstract class ProtocolServer {
                 exception.printStackTrace(System.err);
             }
 
-            if (read == 0) {
-                // end of stream
+            if (read <= 0) {
+                // end of stream (or the stream could not be read)
                 break;
             }
 
@@ -81,6 +124,19 @@ public abstract class ProtocolServer {
                 processData();
             }
         }
+        stopWriter();
+    }
+
+    /**
+     * The factory used to create the threads owned by this session. May be
+     * used to run sessions on virtual threads.
+     */
+    public ThreadFactory getThreadFactory() {
+        return _threadFactory;
+    }
+
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        _threadFactory = threadFactory;
     }
 
     public void stop() {
@@ -91,61 +147,209 @@ public abstract class ProtocolServer {
         sendMessage(e);
     }
 
+    /**
+     * Associates a request command with the type that its arguments should be
+     * deserialized into. Commands that are not registered receive an empty
+     * <code>Request.RequestArguments</code>.
+     */
+    protected void registerRequestArguments(String command, Class<? extends Request.RequestArguments> argumentsType) {
+        _argumentsAdapters.put(command, gson.getAdapter(argumentsType));
+    }
+
     protected abstract void dispatchRequest(String command, Request.RequestArguments arguments, Response response);
 
     private void processData() {
         while (true) {
             if (_bodyLength >= 0) {
                 if (_rawData.getLength() >= _bodyLength) {
-                    byte[] buf = _rawData.removeFirst(_bodyLength);
+                    String body = _rawData.getString(_bodyLength, ENCODING);
+                    _rawData.removeFirst(_bodyLength);
                     _bodyLength = -1;
-                    dispatch(new String(buf, ENCODING));
+                    dispatch(body);
                     continue; // there may be more complete messages to process
                 }
             } else {
-                String s = _rawData.getString(ENCODING);
-                int idx = s.indexOf(TWO_CRLF);
+                // only scan the bytes that were appended since the last pass.
+                // back up a little, in case the separator was split between
+                // two reads.
+                int scanFrom = Math.max(0, _headerScanOffset - (TWO_CRLF_BYTES.length - 1));
+                int idx = _rawData.indexOf(TWO_CRLF_BYTES, scanFrom);
                 if (idx != -1) {
-                    Matcher m = contentLengthPattern.matcher(s);
+                    String header = _rawData.getString(idx, StandardCharsets.US_ASCII);
+                    _rawData.removeFirst(idx + TWO_CRLF_BYTES.length);
+                    _headerScanOffset = 0;
+                    Matcher m = contentLengthPattern.matcher(header);
                     if (m.lookingAt() && m.groupCount() == 1) {
                         String contentLength = m.group(1);
                         _bodyLength = Integer.parseInt(contentLength);
-
-                        _rawData.removeFirst(idx + TWO_CRLF.length());
-
-                        continue; // try to handle a complete message
+                    } else {
+                        System.err.println("Ignoring message with invalid header: " + header);
                     }
+                    continue; // try to handle a complete message
                 }
+                _headerScanOffset = _rawData.getLength();
             }
             break;
         }
     }
 
-    private void dispatch(String req) {
-        Request request = gson.fromJson(req, Request.class);
-        if (request != null && request.type.equals("request")) {
-            switch (request.command) {
-                case InitializeRequest.REQUEST_COMMAND: {
-                    request = gson.fromJson(req, InitializeRequest.class);
-                }
-            }
-            Request.RequestArguments arguments = null;
-            try {
-                Field field = request.getClass().getField("arguments");
-                arguments = (Request.RequestArguments) field.get(request);
-            } catch (Exception e) {
-                arguments = new Request.RequestArguments();
+    void dispatch(String req) {
+        Request request = new Request();
+        Request.RequestArguments arguments = decodeRequest(req, request);
+        if (request.command == null) {
+            return;
+        }
+        if (TRACE) {
+            System.err.print(String.format("\r\n\r\n=====C %1$s: %2$s", request.command, req));
+        }
+        Response response = new Response(request);
+        dispatchRequest(request.command, arguments, response);
+    }
+
+    /**
+     * Reads the seq and command of a request into the specified Request, and
+     * returns its arguments. If the message isn't a request, the command is
+     * null when this method returns.
+     *
+     * The message is read as a stream, and the arguments are bound directly
+     * to the type that was registered for the command. Only if the arguments
+     * appear before the command are they parsed into a tree first.
+     */
+    Request.RequestArguments decodeRequest(String req, Request request) {
+        String type = null;
+        String command = null;
+        Request.RequestArguments arguments = null;
+        boolean hasArguments = false;
+        JsonElement bufferedArguments = null;
+        try {
+            JsonReader reader = new JsonReader(new StringReader(req));
+            // the same as the parsers used by Gson
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return null;
             }
-            if (TRACE) {
-                System.err.print(String.format("\r\n\r\n=====C %1$s: %2$s", request.command, req));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type": {
+                        type = readString(reader);
+                        break;
+                    }
+                    case "command": {
+                        command = readString(reader);
+                        break;
+                    }
+                    case "seq": {
+                        request.seq = reader.nextInt();
+                        break;
+                    }
+                    case "arguments": {
+                        hasArguments = true;
+                        if (command != null) {
+                            arguments = readArguments(reader, command);
+                        } else {
+                            bufferedArguments = JsonParser.parseReader(reader);
+                        }
+                        break;
+                    }
+                    default: {
+                        reader.skipValue();
+                    }
+                }
             }
-            Response response = new Response(request);
-            dispatchRequest(request.command, arguments, response);
+            reader.endObject();
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+        if (!"request".equals(type) || command == null) {
+            return null;
+        }
+        if (bufferedArguments != null) {
+            arguments = readArguments(bufferedArguments, command);
+        } else if (!hasArguments && !_argumentsAdapters.containsKey(command)) {
+            arguments = new Request.RequestArguments();
+        }
+        request.type = type;
+        request.command = command;
+        return arguments;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Commands that are not registered receive an empty RequestArguments, and
+     * null arguments remain null.
+     */
+    private Request.RequestArguments readArguments(JsonReader reader, String command) throws IOException {
+        TypeAdapter<? extends Request.RequestArguments> adapter = _argumentsAdapters.get(command);
+        if (adapter == null) {
+            reader.skipValue();
+            return new Request.RequestArguments();
+        }
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
         }
+        return adapter.read(reader);
     }
 
+    private Request.RequestArguments readArguments(JsonElement element, String command) {
+        TypeAdapter<? extends Request.RequestArguments> adapter = _argumentsAdapters.get(command);
+        if (adapter == null) {
+            return new Request.RequestArguments();
+        }
+        if (element.isJsonNull()) {
+            return null;
+        }
+        return adapter.fromJsonTree(element);
+    }
+
+    /**
+     * Queues a message to be sent by the writer thread. Safe to call from any
+     * thread, and never blocks on the output stream.
+     */
     protected void sendMessage(ProtocolMessage message) {
-        message.seq = _sequenceNumber++;
+        if (_outputClosed) {
+            // nothing can be sent anymore, so don't let the queue grow
+            return;
+        }
+        _outgoingMessages.offer(message);
+        java.lang.Thread writerThread = _writerThread;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void startWriter() {
+        _writerStopRequested = false;
+        _outputClosed = false;
+        _writerThread = ThreadUtils.startDaemonThread(_threadFactory, new MessageWriter(), "DAP message writer");
+    }
+
+    private void stopWriter() {
+        java.lang.Thread writerThread = _writerThread;
+        if (writerThread == null) {
+            return;
+        }
+        // the writer sends any messages that are still queued before it exits
+        _writerStopRequested = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            java.lang.Thread.currentThread().interrupt();
+        }
+        _writerThread = null;
+    }
+
+    private void writeMessage(ProtocolMessage message) throws IOException {
+        message.seq = _sequenceNumber.getAndIncrement();
 
         if (TRACE_RESPONSE && message.type.equals(Response.PROTOCOL_MESSAGE_TYPE)) {
             System.err.print(String.format("\r\n\r\n+++++R: %1$s", gson.toJson(message)));
@@ -155,60 +359,212 @@ public abstract class ProtocolServer {
             System.err.print(String.format("\r\n\r\n-----E %1$s: %2$s", e.event, gson.toJson(e.body)));
         }
 
-        byte[] data = convertToBytes(message);
+        _messageBuffer.reset();
         try {
-            _outputStream.write(data, 0, data.length);
-            _outputStream.flush();
-        } catch (IOException e) {
-            // ignore
-            System.err.println("Exception writing to output stream.");
-            e.printStackTrace(System.err);
+            gson.toJson(message, message.getClass(), _messageJsonWriter);
+            _messageJsonWriter.flush();
+        } catch (RuntimeException e) {
+            // the writer may be in the middle of a value, and the buffer may
+            // contain part of the message, so neither can be reused
+            _messageBuffer.reset();
+            _messageJsonWriter = createMessageJsonWriter();
+            throw e;
         }
+        int start = _messageBuffer.writeHeader();
+        _outputStream.write(_messageBuffer.getBytes(), start, _messageBuffer.getLength() - start);
+        _messageBuffer.trim();
     }
 
-    private byte[] convertToBytes(ProtocolMessage request) {
-        String asJson = gson.toJson(request);
-        byte[] jsonBytes = asJson.getBytes(ENCODING);
+    /**
+     * Drains the outgoing queue on a single thread. Messages that were queued
+     * together are written as one batch with a single flush.
+     */
+    private class MessageWriter implements Runnable {
+        public void run() {
+            while (true) {
+                ProtocolMessage message = _outgoingMessages.poll();
+                if (message == null) {
+                    if (_writerStopRequested) {
+                        break;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                try {
+                    while (message != null) {
+                        try {
+                            writeMessage(message);
+                        } catch (RuntimeException e) {
+                            // skip this message, but keep sending the others
+                            System.err.println("Exception serializing message: " + message.type);
+                            e.printStackTrace(System.err);
+                        }
+                        message = _outgoingMessages.poll();
+                    }
+                    _outputStream.flush();
+                } catch (IOException e) {
+                    System.err.println("Exception writing to output stream.");
+                    e.printStackTrace(System.err);
+                    // the stream is closed, so nothing else can be sent
+                    _outputClosed = true;
+                    _outgoingMessages.clear();
+                    stop();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A reusable buffer that messages are serialized into by the writer thread.
+     * Space for the Content-Length header is reserved at the beginning, and the
+     * header is back-patched once the length of the JSON is known, so that the
+     * complete message may be written with a single call.
+     */
+    private class MessageBuffer extends OutputStream {
+        private byte[] _buffer;
+        private int _length;
+
+        public MessageBuffer() {
+            _buffer = new byte[BUFFER_SIZE];
+            _length = HEADER_RESERVE;
+        }
+
+        public byte[] getBytes() {
+            return _buffer;
+        }
+
+        public int getLength() {
+            return _length;
+        }
+
+        public void reset() {
+            _length = HEADER_RESERVE;
+        }
+
+        public void trim() {
+            // don't hold on to the memory used by an unusually large message
+            if (_buffer.length > MAX_POOLED_MESSAGE_SIZE) {
+                _buffer = new byte[BUFFER_SIZE];
+            }
+            reset();
+        }
+
+        /**
+         * Writes the header immediately before the JSON, and returns the index
+         * where the header starts.
+         */
+        public int writeHeader() {
+            int index = HEADER_RESERVE;
+            index -= TWO_CRLF_BYTES.length;
+            System.arraycopy(TWO_CRLF_BYTES, 0, _buffer, index, TWO_CRLF_BYTES.length);
+            int contentLength = _length - HEADER_RESERVE;
+            do {
+                index--;
+                _buffer[index] = (byte) ('0' + (contentLength % 10));
+                contentLength /= 10;
+            } while (contentLength > 0);
+            index -= CONTENT_LENGTH_BYTES.length;
+            System.arraycopy(CONTENT_LENGTH_BYTES, 0, _buffer, index, CONTENT_LENGTH_BYTES.length);
+            return index;
+        }
 
-        String header = String.format("Content-Length: %1$s%2$s", jsonBytes.length, TWO_CRLF);
-        byte[] headerBytes = header.getBytes(ENCODING);
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            _buffer[_length] = (byte) b;
+            _length++;
+        }
 
-        byte[] data = new byte[headerBytes.length + jsonBytes.length];
-        System.arraycopy(headerBytes, 0, data, 0, headerBytes.length);
-        System.arraycopy(jsonBytes, 0, data, headerBytes.length, jsonBytes.length);
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, _buffer, _length, len);
+            _length += len;
+        }
 
-        return data;
+        private void ensureCapacity(int length) {
+            if (_buffer.length - _length >= length) {
+                return;
+            }
+            byte[] newBuffer = new byte[Math.max(_buffer.length * 2, _length + length)];
+            System.arraycopy(_buffer, 0, newBuffer, 0, _length);
+            _buffer = newBuffer;
+        }
     }
 
+    /**
+     * A growable buffer for incoming bytes. Consumed bytes are skipped instead
+     * of copied, and the remaining bytes are moved to the front only when there
+     * isn't enough free space at the end, so the cost of buffering scales with
+     * the size of the messages instead of the total number of buffered bytes.
+     */
     private class ByteBuffer {
         private byte[] _buffer;
+        private int _start;
+        private int _end;
 
         public ByteBuffer() {
-            _buffer = new byte[0];
+            _buffer = new byte[BUFFER_SIZE];
+            _start = 0;
+            _end = 0;
         }
 
         public int getLength() {
-            return _buffer.length;
+            return _end - _start;
         }
 
-        public String getString(Charset enc) {
-            return new String(_buffer, enc);
+        public String getString(int length, Charset enc) {
+            return new String(_buffer, _start, length, enc);
+        }
+
+        public int indexOf(byte[] pattern, int fromIndex) {
+            int last = _end - pattern.length;
+            for (int i = _start + fromIndex; i <= last; i++) {
+                boolean found = true;
+                for (int j = 0; j < pattern.length; j++) {
+                    if (_buffer[i + j] != pattern[j]) {
+                        found = false;
+                        break;
+                    }
+                }
+                if (found) {
+                    return i - _start;
+                }
+            }
+            return -1;
         }
 
         public void append(byte[] b, int length) {
-            byte[] newBuffer = new byte[_buffer.length + length];
-            System.arraycopy(_buffer, 0, newBuffer, 0, _buffer.length);
-            System.arraycopy(b, 0, newBuffer, _buffer.length, length);
-            _buffer = newBuffer;
+            ensureCapacity(length);
+            System.arraycopy(b, 0, _buffer, _end, length);
+            _end += length;
         }
 
-        public byte[] removeFirst(int n) {
-            byte[] b = new byte[n];
-            System.arraycopy(_buffer, 0, b, 0, n);
-            byte[] newBuffer = new byte[_buffer.length - n];
-            System.arraycopy(_buffer, n, newBuffer, 0, _buffer.length - n);
-            _buffer = newBuffer;
-            return b;
+        public void removeFirst(int n) {
+            _start += n;
+            if (_start == _end) {
+                _start = 0;
+                _end = 0;
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (_buffer.length - _end >= length) {
+                return;
+            }
+            int pending = getLength();
+            int required = pending + length;
+            byte[] target = _buffer;
+            if (required > _buffer.length / 2) {
+                // keep at least half of the buffer free after compacting so
+                // that moving the pending bytes is amortized
+                target = new byte[Math.max(_buffer.length * 2, required * 2)];
+            }
+            System.arraycopy(_buffer, _start, target, 0, pending);
+            _buffer = target;
+            _start = 0;
+            _end = pending;
         }
     }
 }
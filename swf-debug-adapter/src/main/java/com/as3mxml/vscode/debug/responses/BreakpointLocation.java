@@ -0,0 +1,47 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode.debug.responses;
+
+public class BreakpointLocation {
+    public BreakpointLocation() {
+    }
+
+    public BreakpointLocation(int line) {
+        this.line = line;
+    }
+
+    /**
+     * Start line of breakpoint location.
+     */
+    public int line;
+
+    /**
+     * An optional start column of breakpoint location.
+     */
+    public Integer column = null;
+
+    /**
+     * An optional end line of breakpoint location if the location covers a
+     * range.
+     */
+    public Integer endLine = null;
+
+    /**
+     * An optional end column of breakpoint location if the location covers a
+     * range.
+     */
+    public Integer endColumn = null;
+}
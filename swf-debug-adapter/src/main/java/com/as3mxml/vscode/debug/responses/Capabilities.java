@@ -94,6 +94,12 @@ public class Capabilities extends Response.ResponseBody {
      */
     public boolean supportsExceptionOptions = false;
 
+    /**
+     * The debug adapter supports 'filterOptions' as an argument on the
+     * setExceptionBreakpoints request.
+     */
+    public boolean supportsExceptionFilterOptions = false;
+
     /**
      * The debug adapter supports a 'format' attribute on the stackTraceRequest,
      * variablesRequest, and evaluateRequest.
@@ -125,4 +131,9 @@ public class Capabilities extends Response.ResponseBody {
      * attribute of the SourceBreakpoint.
      */
     public boolean supportsLogPoints;
+
+    /**
+     * The debug adapter supports the breakpointLocations request.
+     */
+    public boolean supportsBreakpointLocationsRequest;
 }
@@ -0,0 +1,38 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode.debug.responses;
+
+import com.google.gson.annotations.SerializedName;
+
+public class ExceptionBreakpointsFilter {
+    public ExceptionBreakpointsFilter(String filter, String label, String description, boolean defaultValue,
+            boolean supportsCondition, String conditionDescription) {
+        this.filter = filter;
+        this.label = label;
+        this.description = description;
+        this.defaultValue = defaultValue;
+        this.supportsCondition = supportsCondition;
+        this.conditionDescription = conditionDescription;
+    }
+
+    public String filter;
+    public String label;
+    public String description;
+    @SerializedName("default")
+    public boolean defaultValue;
+    public boolean supportsCondition;
+    public String conditionDescription;
+}
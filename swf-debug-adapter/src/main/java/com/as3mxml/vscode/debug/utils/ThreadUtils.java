@@ -0,0 +1,85 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode.debug.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+public class ThreadUtils {
+	public static final ThreadFactory PLATFORM_THREAD_FACTORY = new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable);
+		}
+	};
+
+	/**
+	 * Returns a factory for virtual threads, if the current JDK supports them.
+	 * Otherwise, falls back to a factory for platform threads. This project is
+	 * compiled for an older JDK, so the API must be accessed with reflection.
+	 */
+	public static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Method ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtualMethod.invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method factoryMethod = builderClass.getMethod("factory");
+			return (ThreadFactory) factoryMethod.invoke(builder);
+		} catch (Exception e) {
+			// the method doesn't exist, or it's a preview feature that
+			// hasn't been enabled
+			return PLATFORM_THREAD_FACTORY;
+		}
+	}
+
+	public static boolean isVirtualThreadFactory(ThreadFactory threadFactory) {
+		return threadFactory != PLATFORM_THREAD_FACTORY;
+	}
+
+	/**
+	 * Creates and starts a new thread with the specified name.
+	 */
+	public static Thread startThread(ThreadFactory threadFactory, Runnable runnable, String name) {
+		Thread thread = threadFactory.newThread(runnable);
+		thread.setName(name);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Creates and starts a new thread with the specified name that will not
+	 * prevent the JVM from exiting.
+	 */
+	public static Thread startDaemonThread(ThreadFactory threadFactory, Runnable runnable, String name) {
+		Thread thread = threadFactory.newThread(runnable);
+		thread.setName(name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Returns an executor that starts a new thread for every task. Virtual
+	 * threads are cheap enough that they should not be pooled.
+	 */
+	public static Executor createThreadPerTaskExecutor(ThreadFactory threadFactory) {
+		return new Executor() {
+			public void execute(Runnable runnable) {
+				threadFactory.newThread(runnable).start();
+			}
+		};
+	}
+}
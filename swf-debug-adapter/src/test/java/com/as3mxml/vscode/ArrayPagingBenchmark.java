@@ -0,0 +1,150 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import com.as3mxml.vscode.debug.requests.VariablesRequest;
+import com.as3mxml.vscode.debug.responses.Scope;
+import com.as3mxml.vscode.debug.responses.StackFrame;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Variable;
+
+/**
+ * Measures paging through a large Array, the way that the editor does when
+ * indexedVariables is large: 20 consecutive pages of 100 items, starting
+ * from the middle. The first page includes fetching the members from the
+ * runtime, which happens once per stop. Each round is a new stop, and the
+ * last round is reported.
+ *
+ * It also checks that each page contains the expected items in order, even
+ * though the runtime returns the members in no particular order, and that
+ * sparse arrays and names that aren't indexes are handled.
+ *
+ * Run with the compiled main and test classes, Gson, and the debugger on the
+ * class path: java com.as3mxml.vscode.ArrayPagingBenchmark
+ */
+public class ArrayPagingBenchmark {
+    private static final int[] LENGTHS = { 20000, 200000 };
+    private static final int PAGES = 20;
+    private static final int PAGE_SIZE = 100;
+    private static final int ROUNDS = 5;
+    private static final long ROUND_TRIP_NANOS = 200000L;
+
+    public static void main(String[] args) throws Exception {
+        checkSparseArray();
+        for (int length : LENGTHS) {
+            benchmark(length);
+        }
+    }
+
+    private static void checkSparseArray() throws Exception {
+        FakePlayer player = new FakePlayer();
+        List<Variable> elements = new ArrayList<>();
+        for (int i = 0; i < 100; i += 2) {
+            elements.add(player.variable(Integer.toString(i), player.numberValue(i)));
+        }
+        // a leading zero means that it isn't an index
+        elements.add(player.variable("012", player.numberValue(-1)));
+        FakePlayer.RecordingDebugSession debugSession = stopWithArray(player, elements);
+        com.as3mxml.vscode.debug.responses.Variable[] page = debugSession.requestVariables(findArray(debugSession),
+                VariablesRequest.FILTER_INDEXED, 10, 10);
+        String names = "";
+        for (com.as3mxml.vscode.debug.responses.Variable variable : page) {
+            names += variable.name + " ";
+        }
+        if (!names.equals("10 12 14 16 18 ")) {
+            throw new AssertionError("Incorrect page of a sparse array: " + names);
+        }
+    }
+
+    private static void benchmark(int length) throws Exception {
+        FakePlayer player = new FakePlayer();
+        List<Variable> elements = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            elements.add(player.variable(Integer.toString(i), player.numberValue(i)));
+        }
+        FakePlayer.RecordingDebugSession debugSession = stopWithArray(player, elements);
+        player.roundTripNanos = ROUND_TRIP_NANOS;
+        long firstPageNanos = 0;
+        long otherPagesNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            if (round > 0) {
+                debugSession.requestContinue();
+                player.suspend();
+            }
+            long arrayReference = findArray(debugSession);
+            long start = System.nanoTime();
+            for (int i = 0; i < PAGES; i++) {
+                int pageStart = length / 2 + i * PAGE_SIZE;
+                com.as3mxml.vscode.debug.responses.Variable[] page = debugSession.requestVariables(arrayReference,
+                        VariablesRequest.FILTER_INDEXED, pageStart, PAGE_SIZE);
+                if (i == 0) {
+                    firstPageNanos = System.nanoTime() - start;
+                }
+                checkPage(page, pageStart);
+            }
+            otherPagesNanos = System.nanoTime() - start - firstPageNanos;
+        }
+        System.out.printf("%d items: first page %.2f ms, then %.3f ms per page%n", length, firstPageNanos / 1e6,
+                otherPagesNanos / 1e6 / (PAGES - 1));
+    }
+
+    private static void checkPage(com.as3mxml.vscode.debug.responses.Variable[] page, int pageStart) {
+        if (page.length != PAGE_SIZE) {
+            throw new AssertionError("Expected " + PAGE_SIZE + " items, but got " + page.length);
+        }
+        for (int i = 0; i < page.length; i++) {
+            int index = pageStart + i;
+            if (!page[i].name.equals(Integer.toString(index)) || !page[i].value.equals(Double.toString(index))) {
+                throw new AssertionError("Expected item " + index + ", but got " + page[i].name);
+            }
+        }
+    }
+
+    /**
+     * Stops with a local Array that has the specified elements, plus a
+     * length, in a shuffled order.
+     */
+    private static FakePlayer.RecordingDebugSession stopWithArray(FakePlayer player, List<Variable> elements)
+            throws Exception {
+        elements.add(player.variable("length", player.numberValue(elements.size())));
+        Collections.shuffle(elements, new Random(1));
+        Variable array = player.variable("items",
+                player.objectValue(1000, "Array", elements.toArray(new Variable[elements.size()])));
+        player.frames = new Frame[] { player.frame("main()", null, array) };
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        debugSession.initializeWithPaging();
+        player.connect(debugSession);
+        player.suspend();
+        return debugSession;
+    }
+
+    private static long findArray(FakePlayer.RecordingDebugSession debugSession) {
+        StackFrame[] stackFrames = debugSession.requestStackTrace();
+        Scope[] scopes = debugSession.requestScopes(stackFrames[0].id);
+        com.as3mxml.vscode.debug.responses.Variable[] locals = debugSession
+                .requestVariables(scopes[scopes.length - 1].variablesReference, null, null, null);
+        if (locals.length != 1 || locals[0].indexedVariables == null) {
+            throw new AssertionError("The Array doesn't have a count of indexed members");
+        }
+        return locals[0].variablesReference;
+    }
+}
@@ -0,0 +1,463 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.as3mxml.vscode.debug.events.StoppedEvent;
+import com.as3mxml.vscode.debug.protocol.ProtocolMessage;
+import com.as3mxml.vscode.debug.protocol.Request;
+import com.as3mxml.vscode.debug.protocol.Response;
+import com.as3mxml.vscode.debug.requests.ContinueRequest;
+import com.as3mxml.vscode.debug.requests.InitializeRequest;
+import com.as3mxml.vscode.debug.requests.ScopesRequest;
+import com.as3mxml.vscode.debug.requests.StackTraceRequest;
+import com.as3mxml.vscode.debug.requests.VariablesRequest;
+import com.as3mxml.vscode.debug.responses.Scope;
+import com.as3mxml.vscode.debug.responses.ScopesResponseBody;
+import com.as3mxml.vscode.debug.responses.StackFrame;
+import com.as3mxml.vscode.debug.responses.StackTraceResponseBody;
+import com.as3mxml.vscode.debug.responses.VariablesResponseBody;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Isolate;
+import flash.tools.debugger.Location;
+import flash.tools.debugger.Session;
+import flash.tools.debugger.SuspendReason;
+import flash.tools.debugger.Value;
+import flash.tools.debugger.Variable;
+import flash.tools.debugger.VariableAttribute;
+import flash.tools.debugger.VariableType;
+import flash.tools.debugger.events.BreakEvent;
+import flash.tools.debugger.events.DebugEvent;
+import flash.tools.debugger.events.TraceEvent;
+import flash.tools.debugger.threadsafe.ThreadSafeSession;
+
+/**
+ * A fake runtime for the benchmarks in this package. The session is wrapped
+ * with ThreadSafeSession, like the ones returned by the session manager, so
+ * every call holds the same lock that the real adapter contends for. Calls
+ * that would need a round trip to the runtime are counted, and take as long
+ * as roundTripNanos.
+ *
+ * The fake values, variables and frames are dynamic proxies, so any method
+ * that the benchmarks don't care about returns a default value.
+ */
+class FakePlayer {
+    final Object sessionManagerLock = new Object();
+    final ThreadSafeSession session;
+    final Map<Long, Value> values = new ConcurrentHashMap<>();
+    final AtomicInteger roundTrips = new AtomicInteger();
+    final AtomicInteger getFramesCalls = new AtomicInteger();
+    volatile Frame[] frames = new Frame[0];
+    volatile long roundTripNanos = 0;
+
+    private final Object eventLock = new Object();
+    private final ArrayDeque<DebugEvent> events = new ArrayDeque<>();
+    private volatile boolean suspended = false;
+    private volatile boolean connected = true;
+    private Thread runnerThread;
+
+    FakePlayer() {
+        Session player = proxy(Session.class, "Session", (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isConnected":
+                    return connected;
+                case "isSuspended":
+                    return suspended;
+                case "suspendReason":
+                    return suspended ? SuspendReason.Breakpoint : SuspendReason.Unknown;
+                case "resume":
+                    suspended = false;
+                    return null;
+                case "getFrames":
+                    roundTrip();
+                    getFramesCalls.incrementAndGet();
+                    return suspended ? frames : new Frame[0];
+                case "getValue":
+                    roundTrip();
+                    return values.get(args[0]);
+                case "getEventCount":
+                    synchronized (eventLock) {
+                        return events.size();
+                    }
+                case "nextEvent":
+                    synchronized (eventLock) {
+                        return events.poll();
+                    }
+                case "waitForEvent":
+                    synchronized (eventLock) {
+                        while (connected && events.isEmpty()) {
+                            eventLock.wait();
+                        }
+                    }
+                    return null;
+                case "bind":
+                    return true;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        session = ThreadSafeSession.wrap(sessionManagerLock, player);
+    }
+
+    /**
+     * Gives the debug session this runtime, without starting its session
+     * runner, so requests may be sent while the runtime is suspended by
+     * suspend().
+     */
+    void connect(SWFDebugSession debugSession) throws Exception {
+        Field sessionField = SWFDebugSession.class.getDeclaredField("swfSession");
+        sessionField.setAccessible(true);
+        sessionField.set(debugSession, session);
+    }
+
+    /**
+     * Connects and starts the session runner of the debug session, as if
+     * the runtime had loaded its first script.
+     */
+    void attach(SWFDebugSession debugSession) throws Exception {
+        connect(debugSession);
+        Class<?> runnerClass = Class.forName(SWFDebugSession.class.getName() + "$SessionRunner");
+        Constructor<?> runnerConstructor = runnerClass.getDeclaredConstructor(SWFDebugSession.class);
+        runnerConstructor.setAccessible(true);
+        Runnable runner = (Runnable) runnerConstructor.newInstance(debugSession);
+        Field initializedField = runnerClass.getDeclaredField("initialized");
+        initializedField.setAccessible(true);
+        initializedField.set(runner, true);
+        runnerThread = new Thread(runner, "SWF session runner");
+        runnerThread.setDaemon(true);
+        runnerThread.start();
+    }
+
+    /**
+     * Disconnects the fake runtime and waits for the session runner to stop.
+     */
+    void detach(SWFDebugSession debugSession) throws Exception {
+        Field cancelField = SWFDebugSession.class.getDeclaredField("cancelRunner");
+        cancelField.setAccessible(true);
+        cancelField.set(debugSession, true);
+        synchronized (eventLock) {
+            connected = false;
+            eventLock.notifyAll();
+        }
+        runnerThread.join(1000);
+    }
+
+    void hitBreakpoint() throws Exception {
+        BreakEvent event = newEvent(BreakEvent.class);
+        event.fileId = -1;
+        event.line = -1;
+        event.isolateId = Isolate.DEFAULT_ID;
+        synchronized (eventLock) {
+            suspended = true;
+            events.add(event);
+            eventLock.notifyAll();
+        }
+    }
+
+    /**
+     * Suspends without queuing an event, for a debug session that doesn't
+     * have a session runner.
+     */
+    void suspend() {
+        suspended = true;
+    }
+
+    void trace(String line) throws Exception {
+        TraceEvent event = newEvent(TraceEvent.class);
+        event.information = line;
+        synchronized (eventLock) {
+            events.add(event);
+            eventLock.notifyAll();
+        }
+    }
+
+    boolean isSuspended() {
+        return suspended;
+    }
+
+    Value objectValue(long id, String className, Variable... members) {
+        Value value = proxy(Value.class, className + "@" + id, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                    return id;
+                case "getType":
+                    return VariableType.OBJECT;
+                case "getTypeName":
+                case "getClassName":
+                    return className;
+                case "getValueAsString":
+                case "getValueAsObject":
+                    return "[object " + className + "]";
+                case "getMembers":
+                    roundTrip();
+                    return members;
+                case "getMemberCount":
+                    roundTrip();
+                    return members.length;
+                case "getMemberNamed":
+                    roundTrip();
+                    for (Variable member : members) {
+                        if (member.getName().equals(args[1])) {
+                            return member;
+                        }
+                    }
+                    return null;
+                case "getIsolateId":
+                    return Isolate.DEFAULT_ID;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        values.put(id, value);
+        return value;
+    }
+
+    Value numberValue(double number) {
+        return proxy(Value.class, Double.toString(number), (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                    return Value.UNKNOWN_ID;
+                case "getType":
+                    return VariableType.NUMBER;
+                case "getTypeName":
+                case "getClassName":
+                    return "Number";
+                case "getValueAsString":
+                    return Double.toString(number);
+                case "getValueAsObject":
+                    return number;
+                case "getMembers":
+                    return new Variable[0];
+                case "getIsolateId":
+                    return Isolate.DEFAULT_ID;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    Variable variable(String name, Value value) {
+        return proxy(Variable.class, name, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "getQualifiedName":
+                    return name;
+                case "getValue":
+                    return value;
+                case "getScope":
+                    return VariableAttribute.PUBLIC_SCOPE;
+                case "getIsolateId":
+                    return Isolate.DEFAULT_ID;
+                case "setValue":
+                    roundTrip();
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    Frame frame(String callSignature, Variable thisVariable, Variable... locals) {
+        Location location = proxy(Location.class, callSignature, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLine":
+                    return 1;
+                case "getIsolateId":
+                    return Isolate.DEFAULT_ID;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+        return proxy(Frame.class, callSignature, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getLocation":
+                    return location;
+                case "getCallSignature":
+                    return callSignature;
+                case "getIsolateId":
+                    return Isolate.DEFAULT_ID;
+                case "getThis":
+                    roundTrip();
+                    return thisVariable;
+                case "getLocals":
+                    roundTrip();
+                    return locals;
+                case "getArguments":
+                case "getScopeChain":
+                    roundTrip();
+                    return new Variable[0];
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    static Response newResponse(String command) {
+        Request request = new Request();
+        request.command = command;
+        return new Response(request);
+    }
+
+    private void roundTrip() {
+        roundTrips.incrementAndGet();
+        long end = System.nanoTime() + roundTripNanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static <T extends DebugEvent> T newEvent(Class<T> eventClass) throws Exception {
+        // the constructor parameters differ between versions of the debugger,
+        // but the public fields are set afterwards anyway
+        Constructor<?> constructor = eventClass.getConstructors()[0];
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Object[] arguments = new Object[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            arguments[i] = defaultValue(parameterTypes[i]);
+        }
+        return eventClass.cast(constructor.newInstance(arguments));
+    }
+
+    private static <T> T proxy(Class<T> type, String name, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(FakePlayer.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return name;
+                        default:
+                            return handler.invoke(proxy, method, args);
+                    }
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        }
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+    /**
+     * Records every message instead of sending it. Requests send their
+     * responses before they return, so the last response is the one for the
+     * most recent request.
+     */
+    static class RecordingDebugSession extends SWFDebugSession {
+        volatile Response lastResponse;
+        private long stoppedEventTime = 0;
+
+        @Override
+        protected void sendMessage(ProtocolMessage message) {
+            if (message instanceof Response) {
+                lastResponse = (Response) message;
+            } else if (message instanceof StoppedEvent) {
+                synchronized (this) {
+                    stoppedEventTime = System.nanoTime();
+                    notifyAll();
+                }
+            }
+        }
+
+        void initializeWithPaging() {
+            InitializeRequest.InitializeRequestArguments arguments = new InitializeRequest.InitializeRequestArguments();
+            arguments.supportsVariablePaging = true;
+            initialize(newResponse(InitializeRequest.REQUEST_COMMAND), arguments);
+        }
+
+        StackFrame[] requestStackTrace() {
+            StackTraceRequest.StackTraceArguments arguments = new StackTraceRequest().new StackTraceArguments();
+            arguments.threadId = Isolate.DEFAULT_ID;
+            stackTrace(newResponse(StackTraceRequest.REQUEST_COMMAND), arguments);
+            return ((StackTraceResponseBody) getSuccessfulBody()).stackFrames;
+        }
+
+        Scope[] requestScopes(int frameId) {
+            ScopesRequest.ScopesArguments arguments = new ScopesRequest().new ScopesArguments();
+            arguments.frameId = frameId;
+            scopes(newResponse(ScopesRequest.REQUEST_COMMAND), arguments);
+            return ((ScopesResponseBody) getSuccessfulBody()).scopes;
+        }
+
+        com.as3mxml.vscode.debug.responses.Variable[] requestVariables(long variablesReference, String filter,
+                Integer start, Integer count) {
+            VariablesRequest.VariablesArguments arguments = new VariablesRequest().new VariablesArguments();
+            arguments.variablesReference = variablesReference;
+            arguments.filter = filter;
+            arguments.start = start;
+            arguments.count = count;
+            variables(newResponse(VariablesRequest.REQUEST_COMMAND), arguments);
+            return ((VariablesResponseBody) getSuccessfulBody()).variables;
+        }
+
+        void requestContinue() {
+            ContinueRequest.ContinueArguments arguments = new ContinueRequest.ContinueArguments();
+            arguments.threadId = Isolate.DEFAULT_ID;
+            continueCommand(newResponse(ContinueRequest.REQUEST_COMMAND), arguments);
+            getSuccessfulBody();
+        }
+
+        private Response.ResponseBody getSuccessfulBody() {
+            Response response = lastResponse;
+            if (!response.success) {
+                throw new AssertionError("The " + response.command + " request failed: " + response.message);
+            }
+            return response.body;
+        }
+
+        synchronized void clearStoppedEvent() {
+            stoppedEventTime = 0;
+        }
+
+        /**
+         * Returns the time that the StoppedEvent was sent, or -1 if it
+         * wasn't sent before the timeout.
+         */
+        synchronized long waitForStoppedEvent(long timeoutMs) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutMs * 1000000L;
+            while (stoppedEventTime == 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return -1;
+                }
+                wait(Math.max(1, remaining / 1000000L));
+            }
+            return stoppedEventTime;
+        }
+    }
+}
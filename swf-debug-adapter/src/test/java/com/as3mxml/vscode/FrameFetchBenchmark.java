@@ -0,0 +1,98 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import com.as3mxml.vscode.debug.requests.EvaluateRequest;
+import com.as3mxml.vscode.debug.responses.Scope;
+import com.as3mxml.vscode.debug.responses.StackFrame;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Variable;
+
+/**
+ * Counts how many times the whole stack is fetched from the runtime for
+ * each stop. With 40 frames on the stack, the editor requests the stack
+ * trace, the scopes and locals of the top frame, and evaluates five
+ * expressions in different frames, plus one without a frame.
+ *
+ * The stack can't change while the runtime is suspended, so it should be
+ * fetched once per stop, and again after every resume.
+ *
+ * Run with the compiled main and test classes, Gson, and the debugger on the
+ * class path: java com.as3mxml.vscode.FrameFetchBenchmark
+ */
+public class FrameFetchBenchmark {
+    private static final int FRAMES = 40;
+    private static final int EVALUATES = 5;
+    private static final int STOPS = 20;
+    private static final long ROUND_TRIP_NANOS = 200000L;
+
+    public static void main(String[] args) throws Exception {
+        FakePlayer player = new FakePlayer();
+        Frame[] frames = new Frame[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            Variable local = player.variable("local", player.numberValue(i));
+            frames[i] = player.frame("function" + i + "()", null, local);
+        }
+        player.frames = frames;
+
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        debugSession.initializeWithPaging();
+        player.connect(debugSession);
+        player.roundTripNanos = ROUND_TRIP_NANOS;
+
+        long totalNanos = 0;
+        int maxGetFramesCalls = 0;
+        for (int stop = 0; stop < STOPS; stop++) {
+            player.suspend();
+            int getFramesCalls = player.getFramesCalls.get();
+            long start = System.nanoTime();
+
+            StackFrame[] stackFrames = debugSession.requestStackTrace();
+            if (stackFrames.length != FRAMES) {
+                throw new AssertionError("Expected " + FRAMES + " frames, but got " + stackFrames.length);
+            }
+            Scope[] scopes = debugSession.requestScopes(stackFrames[0].id);
+            com.as3mxml.vscode.debug.responses.Variable[] locals = debugSession
+                    .requestVariables(scopes[scopes.length - 1].variablesReference, null, null, null);
+            if (locals.length != 1 || !locals[0].value.equals(Double.toString(0))) {
+                throw new AssertionError("Incorrect locals for the top frame");
+            }
+            for (int i = 0; i < EVALUATES; i++) {
+                evaluate(debugSession, "local", stackFrames[i * 7].id);
+            }
+            evaluate(debugSession, "local", null);
+
+            totalNanos += System.nanoTime() - start;
+            getFramesCalls = player.getFramesCalls.get() - getFramesCalls;
+            if (getFramesCalls == 0) {
+                throw new AssertionError("The stack from the previous stop was used at stop " + stop);
+            }
+            maxGetFramesCalls = Math.max(maxGetFramesCalls, getFramesCalls);
+            debugSession.requestContinue();
+        }
+        System.out.printf("per stop: %.2f ms and at most %d getFrames() calls%n", totalNanos / 1e6 / STOPS,
+                maxGetFramesCalls);
+    }
+
+    private static void evaluate(FakePlayer.RecordingDebugSession debugSession, String expression, Integer frameId) {
+        EvaluateRequest.EvaluateArguments arguments = new EvaluateRequest.EvaluateArguments();
+        arguments.expression = expression;
+        arguments.frameId = frameId;
+        arguments.context = "watch";
+        debugSession.evaluate(FakePlayer.newResponse(EvaluateRequest.REQUEST_COMMAND), arguments);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.as3mxml.vscode.debug.requests.ContinueRequest;
+import com.as3mxml.vscode.debug.requests.StackTraceRequest;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Isolate;
+
+/**
+ * Measures the time from the runtime stopping at a breakpoint to the
+ * StoppedEvent being sent, both while the SWF is idle and while it calls
+ * trace() about 10000 times per second.
+ *
+ * It also checks that requests aren't blocked while the SWF is stopped.
+ * Every call to the session holds the session manager's lock, and no events
+ * arrive while stopped, so anything that waits for an event while holding
+ * that lock would keep requests from being handled until the SWF resumes.
+ *
+ * Run with the compiled main and test classes, Gson, and the debugger on the
+ * class path: java com.as3mxml.vscode.StoppedEventLatencyBenchmark
+ */
+public class StoppedEventLatencyBenchmark {
+    private static final int STOPS = 100;
+    private static final long TIMEOUT_MS = 5000;
+    private static final long MAX_REQUEST_MS = 100;
+
+    public static void main(String[] args) throws Exception {
+        checkRequestsWhileStopped();
+        benchmark(false);
+        benchmark(true);
+    }
+
+    private static void checkRequestsWhileStopped() throws Exception {
+        FakePlayer player = new FakePlayer();
+        player.frames = new Frame[] { player.frame("main()", null) };
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        player.attach(debugSession);
+        try {
+            player.hitBreakpoint();
+            waitForStoppedEvent(debugSession);
+            // give the session runner time to go idle
+            Thread.sleep(100);
+            for (int i = 0; i < 20; i++) {
+                long start = System.nanoTime();
+                Thread request = new Thread(() -> {
+                    StackTraceRequest.StackTraceArguments arguments = new StackTraceRequest().new StackTraceArguments();
+                    arguments.threadId = Isolate.DEFAULT_ID;
+                    debugSession.stackTrace(FakePlayer.newResponse(StackTraceRequest.REQUEST_COMMAND), arguments);
+                });
+                request.setDaemon(true);
+                request.start();
+                request.join(TIMEOUT_MS);
+                long elapsedMs = (System.nanoTime() - start) / 1000000L;
+                if (request.isAlive()) {
+                    throw new AssertionError("stackTrace request blocked while stopped for over " + TIMEOUT_MS + " ms");
+                }
+                if (elapsedMs > MAX_REQUEST_MS) {
+                    throw new AssertionError("stackTrace request took " + elapsedMs + " ms while stopped");
+                }
+                if (!debugSession.lastResponse.success) {
+                    throw new AssertionError("stackTrace request failed while stopped");
+                }
+                Thread.sleep(10);
+            }
+        } finally {
+            player.detach(debugSession);
+        }
+    }
+
+    private static void benchmark(boolean traceLoad) throws Exception {
+        FakePlayer player = new FakePlayer();
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        player.attach(debugSession);
+        Thread tracer = null;
+        if (traceLoad) {
+            tracer = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        if (!player.isSuspended()) {
+                            player.trace("trace line\n");
+                        }
+                        long end = System.nanoTime() + 100000L;
+                        while (System.nanoTime() < end) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            tracer.setDaemon(true);
+            tracer.start();
+        }
+        Random random = new Random(1);
+        long[] latencies = new long[STOPS];
+        try {
+            for (int i = 0; i < STOPS; i++) {
+                // the SWF runs for a while before it stops
+                Thread.sleep(20 + random.nextInt(80));
+                debugSession.clearStoppedEvent();
+                long start = System.nanoTime();
+                player.hitBreakpoint();
+                latencies[i] = waitForStoppedEvent(debugSession) - start;
+                ContinueRequest.ContinueArguments arguments = new ContinueRequest.ContinueArguments();
+                arguments.threadId = Isolate.DEFAULT_ID;
+                debugSession.continueCommand(FakePlayer.newResponse(ContinueRequest.REQUEST_COMMAND), arguments);
+                if (!debugSession.lastResponse.success) {
+                    throw new AssertionError("continue request failed");
+                }
+            }
+        } finally {
+            if (tracer != null) {
+                tracer.interrupt();
+            }
+            player.detach(debugSession);
+        }
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%s, over %d stops: average %.2f ms, p50 %.2f ms, p95 %.2f ms, max %.2f ms%n",
+                traceLoad ? "with trace() load" : "idle", STOPS, total / 1e6 / STOPS, latencies[STOPS / 2] / 1e6,
+                latencies[STOPS * 95 / 100] / 1e6, latencies[STOPS - 1] / 1e6);
+    }
+
+    private static long waitForStoppedEvent(FakePlayer.RecordingDebugSession debugSession)
+            throws InterruptedException {
+        long result = debugSession.waitForStoppedEvent(TIMEOUT_MS);
+        if (result == -1) {
+            throw new AssertionError("No StoppedEvent within " + TIMEOUT_MS + " ms");
+        }
+        return result;
+    }
+}
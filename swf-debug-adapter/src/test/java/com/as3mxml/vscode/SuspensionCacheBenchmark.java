@@ -0,0 +1,134 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import java.lang.reflect.Field;
+
+import com.as3mxml.vscode.debug.responses.Scope;
+import com.as3mxml.vscode.debug.responses.StackFrame;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Isolate;
+import flash.tools.debugger.Value;
+import flash.tools.debugger.Variable;
+import flash.tools.debugger.expression.Context;
+
+/**
+ * Counts the round trips to the runtime for a typical stop. The editor
+ * shows the locals, the user expands this, which has 80 object-typed
+ * fields, ten watch expressions like fieldN.p3 are evaluated twice (once
+ * for the watch view and once for hovers), and this is expanded again.
+ *
+ * The watch expressions are evaluated with the same expression context and
+ * cache that the evaluate request uses, because the expression parser
+ * belongs to the debugger library.
+ *
+ * It also checks that values are fetched again after the runtime resumes,
+ * so a value that changed between stops is never stale.
+ *
+ * Run with the compiled main and test classes, Gson, and the debugger on the
+ * class path: java com.as3mxml.vscode.SuspensionCacheBenchmark
+ */
+public class SuspensionCacheBenchmark {
+    private static final int FIELDS = 80;
+    private static final int FIELD_MEMBERS = 40;
+    private static final int WATCHES = 10;
+    private static final int STOPS = 20;
+    private static final long ROUND_TRIP_NANOS = 200000L;
+
+    public static void main(String[] args) throws Exception {
+        FakePlayer player = new FakePlayer();
+        Variable[][] fieldMembers = new Variable[FIELDS][];
+        Variable[] fields = new Variable[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            fieldMembers[i] = new Variable[FIELD_MEMBERS];
+            for (int j = 0; j < FIELD_MEMBERS; j++) {
+                fieldMembers[i][j] = player.variable("p" + j, player.numberValue(j));
+            }
+            fields[i] = player.variable("field" + i, player.objectValue(2000 + i, "flash.geom::Matrix",
+                    fieldMembers[i]));
+        }
+        Value root = player.objectValue(1000, "flash.display::Sprite", fields);
+        player.values.put(Value.THIS_ID, root);
+        Variable[] locals = new Variable[5];
+        for (int i = 0; i < locals.length; i++) {
+            locals[i] = player.variable("local" + i, player.numberValue(i));
+        }
+        player.frames = new Frame[] { player.frame("main()", player.variable("this", root), locals) };
+
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        debugSession.initializeWithPaging();
+        player.connect(debugSession);
+        player.roundTripNanos = ROUND_TRIP_NANOS;
+        Field cacheField = SWFDebugSession.class.getDeclaredField("suspensionCache");
+        cacheField.setAccessible(true);
+        SuspensionCache cache = (SuspensionCache) cacheField.get(debugSession);
+
+        long totalNanos = 0;
+        int totalRoundTrips = 0;
+        for (int stop = 0; stop < STOPS; stop++) {
+            // the SWF changes a value while it runs
+            fieldMembers[3][7] = player.variable("p7", player.numberValue(1000 + stop));
+            player.suspend();
+            int roundTrips = player.roundTrips.get();
+            long start = System.nanoTime();
+
+            StackFrame[] stackFrames = debugSession.requestStackTrace();
+            Scope[] scopes = debugSession.requestScopes(stackFrames[0].id);
+            com.as3mxml.vscode.debug.responses.Variable[] localVariables = debugSession
+                    .requestVariables(scopes[scopes.length - 1].variablesReference, null, null, null);
+            long thisReference = find(localVariables, "this").variablesReference;
+            com.as3mxml.vscode.debug.responses.Variable[] thisVariables = debugSession
+                    .requestVariables(thisReference, null, null, null);
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < WATCHES; j++) {
+                    Context context = new SWFExpressionContext(player.session, Isolate.DEFAULT_ID,
+                            player.frames[0], cache, 0);
+                    Variable watch = (Variable) context.createContext("field" + j).lookup("p3");
+                    if (!watch.getValue().getValueAsString().equals(Double.toString(3))) {
+                        throw new AssertionError("Incorrect value for field" + j + ".p3");
+                    }
+                }
+            }
+            com.as3mxml.vscode.debug.responses.Variable[] thisVariablesAgain = debugSession
+                    .requestVariables(thisReference, null, null, null);
+
+            totalNanos += System.nanoTime() - start;
+            totalRoundTrips += player.roundTrips.get() - roundTrips;
+            if (thisVariables.length != FIELDS || thisVariablesAgain.length != FIELDS) {
+                throw new AssertionError("Expected " + FIELDS + " fields");
+            }
+            com.as3mxml.vscode.debug.responses.Variable[] members = debugSession
+                    .requestVariables(find(thisVariablesAgain, "field3").variablesReference, null, null, null);
+            if (!find(members, "p7").value.equals(Double.toString(1000 + stop))) {
+                throw new AssertionError("A value from a previous stop was returned at stop " + stop);
+            }
+            debugSession.requestContinue();
+        }
+        System.out.printf("per stop: %.2f ms and %d round trips%n", totalNanos / 1e6 / STOPS,
+                totalRoundTrips / STOPS);
+    }
+
+    private static com.as3mxml.vscode.debug.responses.Variable find(
+            com.as3mxml.vscode.debug.responses.Variable[] variables, String name) {
+        for (com.as3mxml.vscode.debug.responses.Variable variable : variables) {
+            if (variable.name.equals(name)) {
+                return variable;
+            }
+        }
+        throw new AssertionError("Missing variable: " + name);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode;
+
+import com.as3mxml.vscode.debug.responses.Scope;
+import com.as3mxml.vscode.debug.responses.StackFrame;
+
+import flash.tools.debugger.Frame;
+import flash.tools.debugger.Value;
+import flash.tools.debugger.Variable;
+
+/**
+ * Measures expanding an object with many object-typed fields, like a
+ * display object, in a deep object graph. Every field is an object with 40
+ * members of its own, and one field is an Array. Each expansion happens at
+ * a new stop, so nothing is cached from the previous one.
+ *
+ * It also checks that the counts used for paging are sent for the Array,
+ * and omitted for the other objects, which the editor expands on demand.
+ *
+ * Run with the compiled main and test classes, Gson, and the debugger on the
+ * class path: java com.as3mxml.vscode.VariablesExpansionBenchmark
+ */
+public class VariablesExpansionBenchmark {
+    private static final int FIELDS = 80;
+    private static final int FIELD_MEMBERS = 40;
+    private static final int ARRAY_LENGTH = 5;
+    private static final int STOPS = 20;
+    private static final long ROUND_TRIP_NANOS = 200000L;
+
+    public static void main(String[] args) throws Exception {
+        FakePlayer player = new FakePlayer();
+        Variable[] fields = new Variable[FIELDS + 1];
+        long nextId = 2000;
+        for (int i = 0; i < FIELDS; i++) {
+            Variable[] members = new Variable[FIELD_MEMBERS];
+            for (int j = 0; j < members.length; j++) {
+                members[j] = player.variable("p" + j, player.numberValue(j));
+            }
+            fields[i] = player.variable("field" + i, player.objectValue(nextId++, "flash.geom::Matrix", members));
+        }
+        Variable[] items = new Variable[ARRAY_LENGTH + 1];
+        for (int i = 0; i < ARRAY_LENGTH; i++) {
+            items[i] = player.variable(Integer.toString(i), player.numberValue(i));
+        }
+        items[ARRAY_LENGTH] = player.variable("length", player.numberValue(ARRAY_LENGTH));
+        fields[FIELDS] = player.variable("items", player.objectValue(nextId++, "Array", items));
+        Value root = player.objectValue(1000, "flash.display::Sprite", fields);
+        player.values.put(Value.THIS_ID, root);
+        player.frames = new Frame[] { player.frame("main()", player.variable("this", root)) };
+
+        FakePlayer.RecordingDebugSession debugSession = new FakePlayer.RecordingDebugSession();
+        debugSession.initializeWithPaging();
+        player.connect(debugSession);
+        player.roundTripNanos = ROUND_TRIP_NANOS;
+
+        long totalNanos = 0;
+        int totalRoundTrips = 0;
+        for (int stop = 0; stop < STOPS; stop++) {
+            player.suspend();
+            long thisReference = findThis(debugSession);
+            int roundTrips = player.roundTrips.get();
+            long start = System.nanoTime();
+            com.as3mxml.vscode.debug.responses.Variable[] variables = debugSession.requestVariables(thisReference,
+                    null, null, null);
+            totalNanos += System.nanoTime() - start;
+            totalRoundTrips += player.roundTrips.get() - roundTrips;
+            checkFields(debugSession, variables);
+            debugSession.requestContinue();
+        }
+        System.out.printf("expand an object with %d object fields: %.2f ms and %d round trips per expansion%n",
+                FIELDS, totalNanos / 1e6 / STOPS, totalRoundTrips / STOPS);
+    }
+
+    private static long findThis(FakePlayer.RecordingDebugSession debugSession) {
+        StackFrame[] stackFrames = debugSession.requestStackTrace();
+        Scope[] scopes = debugSession.requestScopes(stackFrames[0].id);
+        com.as3mxml.vscode.debug.responses.Variable[] locals = debugSession
+                .requestVariables(scopes[scopes.length - 1].variablesReference, null, null, null);
+        return find(locals, "this").variablesReference;
+    }
+
+    private static void checkFields(FakePlayer.RecordingDebugSession debugSession,
+            com.as3mxml.vscode.debug.responses.Variable[] variables) {
+        if (variables.length != FIELDS + 1) {
+            throw new AssertionError("Expected " + (FIELDS + 1) + " fields, but got " + variables.length);
+        }
+        for (com.as3mxml.vscode.debug.responses.Variable variable : variables) {
+            if (variable.variablesReference == null || variable.variablesReference <= 0) {
+                throw new AssertionError("Field can't be expanded: " + variable.name);
+            }
+            if (variable.name.equals("items")) {
+                if (!Integer.valueOf(ARRAY_LENGTH).equals(variable.indexedVariables)
+                        || !Integer.valueOf(1).equals(variable.namedVariables)) {
+                    throw new AssertionError("Incorrect counts for Array: " + variable.indexedVariables + ", "
+                            + variable.namedVariables);
+                }
+            } else if (variable.indexedVariables != null || variable.namedVariables != null) {
+                throw new AssertionError("Counts sent for an object that isn't paged: " + variable.name);
+            }
+        }
+        // the members are still fetched on demand
+        com.as3mxml.vscode.debug.responses.Variable[] members = debugSession
+                .requestVariables(find(variables, "field3").variablesReference, null, null, null);
+        if (members.length != FIELD_MEMBERS || !find(members, "p7").value.equals(Double.toString(7))) {
+            throw new AssertionError("Incorrect members for field3");
+        }
+    }
+
+    private static com.as3mxml.vscode.debug.responses.Variable find(
+            com.as3mxml.vscode.debug.responses.Variable[] variables, String name) {
+        for (com.as3mxml.vscode.debug.responses.Variable variable : variables) {
+            if (variable.name.equals(name)) {
+                return variable;
+            }
+        }
+        throw new AssertionError("Missing variable: " + name);
+    }
+}
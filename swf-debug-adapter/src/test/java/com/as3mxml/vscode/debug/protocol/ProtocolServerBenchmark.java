@@ -0,0 +1,305 @@
+/*
+Copyright 2016-2025 Bowler Hat LLC
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+	http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.as3mxml.vscode.debug.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.as3mxml.vscode.debug.requests.InitializeRequest;
+import com.as3mxml.vscode.debug.requests.SetBreakpointsRequest;
+import com.as3mxml.vscode.debug.requests.VariablesRequest;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+
+/**
+ * Measures the cost of framing and decoding incoming requests separately,
+ * and checks that every request survives being split across reads at
+ * arbitrary positions, including in the middle of a header or a multi-byte
+ * character.
+ *
+ * The legacy decoder is a copy of the one that ProtocolServer used before
+ * requests were decoded through a command-keyed registry. It parsed each
+ * request with a deserializer that dispatched into Gson a second time,
+ * parsed initialize a third time, and found the arguments with reflection.
+ * It is compared with ProtocolServer.decodeRequest() on the same strings.
+ * Framing is timed on its own, with a server that doesn't decode anything.
+ *
+ * Run with the compiled main and test classes and Gson on the class path:
+ * java com.as3mxml.vscode.debug.protocol.ProtocolServerBenchmark
+ */
+public class ProtocolServerBenchmark {
+    private static final int ITERATIONS = 200000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        checkFraming();
+        checkDecoding();
+
+        String[] requests = { createVariablesRequest(), createInitializeRequest(), createSetBreakpointsRequest() };
+        for (String request : requests) {
+            benchmark(request);
+        }
+    }
+
+    private static String createVariablesRequest() {
+        return "{\"seq\":5,\"type\":\"request\",\"command\":\"variables\",\"arguments\":"
+                + "{\"variablesReference\":123456,\"filter\":\"indexed\",\"start\":0,\"count\":100}}";
+    }
+
+    private static String createInitializeRequest() {
+        return "{\"seq\":1,\"type\":\"request\",\"command\":\"initialize\",\"arguments\":"
+                + "{\"clientID\":\"vscode\",\"adapterID\":\"swf\",\"linesStartAt1\":true,"
+                + "\"supportsVariablePaging\":true}}";
+    }
+
+    private static String createSetBreakpointsRequest() {
+        StringBuilder breakpoints = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) {
+                breakpoints.append(',');
+            }
+            breakpoints.append("{\"line\":" + (i * 3 + 1) + ",\"condition\":\"i > " + i + "\"}");
+        }
+        return "{\"seq\":6,\"type\":\"request\",\"command\":\"setBreakpoints\",\"arguments\":"
+                + "{\"source\":{\"path\":\"/a/b/C.as\",\"name\":\"C.as\"},\"breakpoints\":[" + breakpoints
+                + "],\"sourceModified\":false}}";
+    }
+
+    private static byte[] frame(String body) {
+        byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        byte[] header = ("Content-Length: " + bodyBytes.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[header.length + bodyBytes.length];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(bodyBytes, 0, result, header.length, bodyBytes.length);
+        return result;
+    }
+
+    private static void checkFraming() {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int count = 5000;
+        for (int i = 0; i < count; i++) {
+            String padding = "\u00e9".repeat(i % 50);
+            String body = "{\"seq\":" + i + ",\"type\":\"request\",\"command\":\"variables\",\"arguments\":"
+                    + "{\"variablesReference\":" + i + ",\"filter\":\"" + padding + "\"}}";
+            data.writeBytes(frame(body));
+        }
+        BenchmarkServer server = new BenchmarkServer();
+        server.checkArguments = true;
+        server.start(new SplitInputStream(data.toByteArray(), 7000), OutputStream.nullOutputStream());
+        if (server.dispatchCount != count) {
+            throw new AssertionError("Expected " + count + " requests, but dispatched " + server.dispatchCount);
+        }
+        System.out.println("framing: " + count + " requests decoded from split reads");
+    }
+
+    private static void checkDecoding() {
+        BenchmarkServer server = new BenchmarkServer();
+        Request request = new Request();
+        Request.RequestArguments arguments = server.decodeRequest(
+                "{\"arguments\":{\"variablesReference\":12},\"seq\":3,\"type\":\"request\","
+                        + "\"command\":\"variables\"}",
+                request);
+        if (!(arguments instanceof VariablesRequest.VariablesArguments)
+                || ((VariablesRequest.VariablesArguments) arguments).variablesReference != 12 || request.seq != 3) {
+            throw new AssertionError("Arguments before the command decoded incorrectly");
+        }
+        request = new Request();
+        arguments = server.decodeRequest("{\"seq\":4,\"type\":\"request\",\"command\":\"threads\","
+                + "\"arguments\":{\"unused\":[1,{}]}}", request);
+        if (arguments == null || arguments.getClass() != Request.RequestArguments.class
+                || !"threads".equals(request.command)) {
+            throw new AssertionError("Unregistered command decoded incorrectly");
+        }
+        request = new Request();
+        arguments = server.decodeRequest("{\"seq\":5,\"type\":\"request\",\"command\":\"variables\","
+                + "\"arguments\":null}", request);
+        if (arguments != null || !"variables".equals(request.command)) {
+            throw new AssertionError("Null arguments decoded incorrectly");
+        }
+        request = new Request();
+        server.decodeRequest("{\"seq\":6,\"type\":\"event\",\"command\":\"variables\"}", request);
+        if (request.command != null) {
+            throw new AssertionError("A message that isn't a request was decoded");
+        }
+        System.out.println("decoding: argument order, unregistered commands, and null arguments");
+    }
+
+    private static void benchmark(String request) throws IOException {
+        byte[] framed = frame(request);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(framed.length * ITERATIONS);
+        for (int i = 0; i < ITERATIONS; i++) {
+            data.write(framed);
+        }
+        byte[] allRequests = data.toByteArray();
+        LegacyDecoder legacyDecoder = new LegacyDecoder();
+        BenchmarkServer decodeServer = new BenchmarkServer();
+        String command = null;
+        double legacyTime = 0.0;
+        double decodeTime = 0.0;
+        double framingTime = 0.0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startTime = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                legacyDecoder.decode(request);
+            }
+            long legacyEndTime = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                Request decodedRequest = new Request();
+                decodeServer.decodeRequest(request, decodedRequest);
+                command = decodedRequest.command;
+            }
+            long decodeEndTime = System.nanoTime();
+            FramingServer framingServer = new FramingServer();
+            framingServer.start(new SplitInputStream(allRequests, ProtocolServer.BUFFER_SIZE),
+                    OutputStream.nullOutputStream());
+            long framingEndTime = System.nanoTime();
+            if (framingServer.dispatchCount != ITERATIONS) {
+                throw new AssertionError("Expected " + ITERATIONS + " requests, but framed "
+                        + framingServer.dispatchCount);
+            }
+            legacyTime = (legacyEndTime - startTime) / 1000.0 / ITERATIONS;
+            decodeTime = (decodeEndTime - legacyEndTime) / 1000.0 / ITERATIONS;
+            framingTime = (framingEndTime - decodeEndTime) / 1000.0 / ITERATIONS;
+        }
+        System.out.println(String.format("%-15s legacy decode %6.2f us, decode %6.2f us, framing %6.2f us",
+                command, legacyTime, decodeTime, framingTime));
+    }
+
+    /**
+     * Splits the messages without decoding them.
+     */
+    private static class FramingServer extends ProtocolServer {
+        public int dispatchCount = 0;
+
+        @Override
+        void dispatch(String req) {
+            dispatchCount++;
+        }
+
+        @Override
+        protected void dispatchRequest(String command, Request.RequestArguments arguments, Response response) {
+        }
+    }
+
+    private static class BenchmarkServer extends ProtocolServer {
+        public boolean checkArguments = false;
+        public int dispatchCount = 0;
+
+        public BenchmarkServer() {
+            registerRequestArguments(InitializeRequest.REQUEST_COMMAND,
+                    InitializeRequest.InitializeRequestArguments.class);
+            registerRequestArguments(VariablesRequest.REQUEST_COMMAND, VariablesRequest.VariablesArguments.class);
+            registerRequestArguments(SetBreakpointsRequest.REQUEST_COMMAND,
+                    SetBreakpointsRequest.SetBreakpointsArguments.class);
+        }
+
+        @Override
+        protected void dispatchRequest(String command, Request.RequestArguments arguments, Response response) {
+            if (arguments == null) {
+                throw new AssertionError("Missing arguments for request: " + command);
+            }
+            if (checkArguments) {
+                // the framing check encodes the seq in the arguments
+                VariablesRequest.VariablesArguments variablesArguments =
+                        (VariablesRequest.VariablesArguments) arguments;
+                if (variablesArguments.variablesReference != response.request_seq
+                        || variablesArguments.filter.length() != response.request_seq % 50) {
+                    throw new AssertionError("Request decoded incorrectly: " + response.request_seq);
+                }
+            }
+            dispatchCount++;
+        }
+    }
+
+    /**
+     * Returns the data in chunks of random sizes, up to a maximum size.
+     */
+    private static class SplitInputStream extends InputStream {
+        private byte[] data;
+        private int position = 0;
+        private int maxChunkSize;
+        private Random random = new Random(1);
+
+        public SplitInputStream(byte[] data, int maxChunkSize) {
+            this.data = data;
+            this.maxChunkSize = maxChunkSize;
+        }
+
+        @Override
+        public int read() {
+            if (position >= data.length) {
+                return -1;
+            }
+            return data[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int size = Math.min(len, Math.min(1 + random.nextInt(maxChunkSize), data.length - position));
+            System.arraycopy(data, position, b, off, size);
+            position += size;
+            return size;
+        }
+    }
+
+    private static class LegacyDecoder {
+        private Gson gson;
+
+        public LegacyDecoder() {
+            gson = new GsonBuilder().registerTypeAdapter(Request.class, new LegacyRequestDeserializer()).create();
+        }
+
+        public Request.RequestArguments decode(String req) {
+            Request request = gson.fromJson(req, Request.class);
+            if (request.command.equals(InitializeRequest.REQUEST_COMMAND)) {
+                request = gson.fromJson(req, InitializeRequest.class);
+            }
+            try {
+                Field field = request.getClass().getField("arguments");
+                return (Request.RequestArguments) field.get(request);
+            } catch (Exception e) {
+                return new Request.RequestArguments();
+            }
+        }
+
+        private class LegacyRequestDeserializer implements JsonDeserializer<Request> {
+            public Request deserialize(JsonElement je, Type typeOfT, JsonDeserializationContext context) {
+                String command = je.getAsJsonObject().get("command").getAsString();
+                switch (command) {
+                    case InitializeRequest.REQUEST_COMMAND:
+                        return gson.fromJson(je, InitializeRequest.class);
+                    case VariablesRequest.REQUEST_COMMAND:
+                        return gson.fromJson(je, VariablesRequest.class);
+                    case SetBreakpointsRequest.REQUEST_COMMAND:
+                        return gson.fromJson(je, SetBreakpointsRequest.class);
+                }
+                return new Gson().fromJson(je, Request.class);
+            }
+        }
+    }
+}